@@ -0,0 +1,74 @@
+package nl.pancompany.eventstore;
+
+import lombok.extern.slf4j.Slf4j;
+import nl.pancompany.eventstore.checkpoint.CheckpointStore;
+import nl.pancompany.eventstore.data.SequencePosition;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Stores the progress of a tracking event handler in batches. For partitioned event handlers, the checkpoint is the
+ * lowest last processed position of all partitions, so no partition skips events after a restart. Idle partitions are
+ * moved past the events they do not accept first, so they do not hold back the checkpoint.
+ */
+@Slf4j
+class Checkpointer {
+
+    private final CheckpointStore checkpointStore;
+    private final String trackingName;
+    private final int eventsBetweenCheckpoints;
+    private final long nanosBetweenCheckpoints;
+    private final List<EventHandlerSequence> sequences = new ArrayList<>();
+    private int eventsSinceCheckpoint;
+    private long lastCheckpointNanos = System.nanoTime();
+    private int checkpointedPosition;
+
+    Checkpointer(CheckpointStore checkpointStore, String trackingName, int eventsBetweenCheckpoints,
+                 long nanosBetweenCheckpoints, int startPosition) {
+        this.checkpointStore = checkpointStore;
+        this.trackingName = trackingName;
+        this.eventsBetweenCheckpoints = eventsBetweenCheckpoints;
+        this.nanosBetweenCheckpoints = nanosBetweenCheckpoints;
+        this.checkpointedPosition = startPosition - 1;
+    }
+
+    /**
+     * @return The start position of the tracking event handler: right after the stored checkpoint, if any
+     */
+    static int getStartPosition(CheckpointStore checkpointStore, String trackingName, int defaultStartPosition) {
+        return checkpointStore.load(trackingName)
+                .map(lastProcessedPosition -> lastProcessedPosition.value() + 1)
+                .orElse(defaultStartPosition);
+    }
+
+    synchronized void track(List<EventHandlerSequence> sequences) {
+        this.sequences.addAll(sequences);
+    }
+
+    synchronized void onEventsDelivered(int handledEvents) {
+        eventsSinceCheckpoint += handledEvents;
+        if (eventsSinceCheckpoint >= eventsBetweenCheckpoints
+                || System.nanoTime() - lastCheckpointNanos >= nanosBetweenCheckpoints) {
+            try {
+                checkpoint();
+            } catch (RuntimeException e) { // retried on the next delivery, events are delivered at least once anyway
+                log.warn("Could not store checkpoint of event handler {}", trackingName, e);
+            }
+        }
+    }
+
+    synchronized void checkpoint() {
+        sequences.forEach(EventHandlerSequence::skipIfIdle);
+        int lastProcessedPosition = sequences.stream()
+                .mapToInt(EventHandlerSequence::getLastProcessedPosition)
+                .min().orElse(checkpointedPosition);
+        if (lastProcessedPosition > checkpointedPosition) {
+            checkpointStore.store(trackingName, SequencePosition.of(lastProcessedPosition));
+            checkpointedPosition = lastProcessedPosition;
+        }
+        eventsSinceCheckpoint = 0;
+        lastCheckpointNanos = System.nanoTime();
+    }
+
+}
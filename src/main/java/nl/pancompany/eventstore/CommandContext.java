@@ -0,0 +1,123 @@
+package nl.pancompany.eventstore;
+
+import nl.pancompany.eventstore.StateManager.StateManagerOptimisticLockingException;
+import nl.pancompany.eventstore.data.AppendCondition;
+import nl.pancompany.eventstore.data.Event;
+import nl.pancompany.eventstore.data.ReadResults;
+import nl.pancompany.eventstore.data.SequencePosition;
+import nl.pancompany.eventstore.exception.AppendConditionNotSatisfied;
+import nl.pancompany.eventstore.query.Query;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Executes a command that decides on several states at once. The states are added first, and then loaded together
+ * from a single consistent read, see {@link EventStore#readAll(List)}. Events applied to any of the states are
+ * collected, and appended together on {@link #commit()}, with one append condition for the queries of all states.
+ * Either all events are appended, or none.
+ * <pre>{@code
+ * CommandContext context = eventStore.createCommandContext();
+ * StateManager<Course> course = context.addState(Course.class, courseQuery);
+ * StateManager<Student> student = context.addState(Student.class, studentQuery);
+ * context.load();
+ * // < business rules validation and decision-making >
+ * course.apply(studentSubscribed, Tags.and(courseTag, studentTag));
+ * context.commit();
+ * }</pre>
+ * A command context is used by a single thread, for a single command.
+ */
+public class CommandContext {
+
+    private final EventStore eventStore;
+    private final List<StateManager<?>> stateManagers = new ArrayList<>();
+    private final List<Query> queries = new ArrayList<>();
+    private final List<Event> collectedEvents = new ArrayList<>();
+    private AppendCondition appendCondition; // null until loaded
+    private boolean committed;
+
+    CommandContext(EventStore eventStore) {
+        this.eventStore = eventStore;
+    }
+
+    /**
+     * Adds a state to load, before the context is loaded.
+     *
+     * @return The state manager of the state, which has a state once the context is loaded
+     */
+    public <T> StateManager<T> addState(Class<T> stateClass, Query query) {
+        requireNonNull(stateClass);
+        requireNonNull(query);
+        if (appendCondition != null) {
+            throw new IllegalStateException("States must be added before the command context is loaded.");
+        }
+        var stateManager = new StateManager<>(eventStore, stateClass, query, this);
+        stateManagers.add(stateManager);
+        queries.add(query);
+        return stateManager;
+    }
+
+    /**
+     * Loads all added states from a single read of the event store.
+     */
+    public void load() {
+        if (stateManagers.isEmpty()) {
+            throw new IllegalStateException("At least one state must be added to the command context.");
+        }
+        if (appendCondition != null) {
+            throw new IllegalStateException("The command context is already loaded.");
+        }
+        ReadResults readResults = eventStore.readAll(queries);
+        for (int i = 0; i < stateManagers.size(); i++) {
+            stateManagers.get(i).load(readResults.events(i));
+        }
+        appendCondition = readResults.appendCondition();
+    }
+
+    void checkCollecting() {
+        if (appendCondition == null) {
+            throw new IllegalStateException("The command context must be loaded before applying events.");
+        }
+        if (committed) {
+            throw new IllegalStateException("The command context is already committed.");
+        }
+    }
+
+    void collect(List<Event> events) {
+        checkCollecting();
+        collectedEvents.addAll(events);
+    }
+
+    /**
+     * Appends the events applied to all states at once, unless an event that matches the query of any of the states
+     * was appended since the context was loaded. In that case, the states still contain the applied events, so a new
+     * command context must be loaded to retry the command.
+     *
+     * @return The position of the last appended event, if any events were applied
+     * @throws StateManagerOptimisticLockingException When an event matching any of the queries was appended since
+     *                                                loading
+     */
+    public Optional<SequencePosition> commit() {
+        if (appendCondition == null) {
+            throw new IllegalStateException("The command context must be loaded before committing.");
+        }
+        if (committed) {
+            throw new IllegalStateException("The command context is already committed.");
+        }
+        committed = true;
+        if (collectedEvents.isEmpty()) {
+            return Optional.empty();
+        }
+        try {
+            return eventStore.append(List.copyOf(collectedEvents), appendCondition);
+        } catch (AppendConditionNotSatisfied e) {
+            throw new StateManagerOptimisticLockingException(
+                    "An (unmanaged) state-modifying event was stored after loading the command context but before " +
+                            "committing it, please retry.", e);
+        }
+    }
+
+}
@@ -0,0 +1,44 @@
+package nl.pancompany.eventstore;
+
+import lombok.extern.slf4j.Slf4j;
+import nl.pancompany.eventstore.dispatch.Dispatcher;
+
+/**
+ * Finds the {@link Dispatcher} of a class: the one generated at build time if present, otherwise a
+ * {@link ReflectiveDispatcher}. The dispatcher is looked up once and cached with the class.
+ */
+@Slf4j
+final class Dispatchers {
+
+    static final String GENERATED_DISPATCHER_SUFFIX = "$$Dispatcher";
+
+    private static final ClassValue<Dispatcher> dispatchers = new ClassValue<>() {
+        @Override
+        protected Dispatcher computeValue(Class<?> clazz) {
+            return findDispatcher(clazz);
+        }
+    };
+
+    private Dispatchers() {
+    }
+
+    static Dispatcher of(Class<?> clazz) {
+        return dispatchers.get(clazz);
+    }
+
+    private static Dispatcher findDispatcher(Class<?> clazz) {
+        try {
+            Class<?> generatedDispatcher = Class.forName(clazz.getName() + GENERATED_DISPATCHER_SUFFIX, true,
+                    clazz.getClassLoader());
+            if (Dispatcher.class.isAssignableFrom(generatedDispatcher)) {
+                return (Dispatcher) generatedDispatcher.getConstructor().newInstance();
+            }
+        } catch (ClassNotFoundException e) {
+            // not generated, e.g. no annotation processing or private members
+        } catch (ReflectiveOperationException | LinkageError e) {
+            log.warn("Could not use generated dispatcher of {}, falling back to reflection", clazz.getName(), e);
+        }
+        return new ReflectiveDispatcher(clazz);
+    }
+
+}
@@ -2,20 +2,27 @@ package nl.pancompany.eventstore;
 
 import lombok.extern.slf4j.Slf4j;
 import nl.pancompany.eventstore.annotation.EventHandler;
-import nl.pancompany.eventstore.annotation.ResetHandler;
+import nl.pancompany.eventstore.dispatch.Dispatcher;
+import nl.pancompany.eventstore.dispatch.EventHandlerDefinition;
 import nl.pancompany.eventstore.query.Query;
+import nl.pancompany.eventstore.query.QueryItem;
 import nl.pancompany.eventstore.query.Tag;
 import nl.pancompany.eventstore.query.Type;
+import nl.pancompany.eventstore.data.Event;
+import nl.pancompany.eventstore.data.EventHandlerMetrics;
+import nl.pancompany.eventstore.data.EventHandlerOptions;
 import nl.pancompany.eventstore.data.LoggedException;
-import nl.pancompany.eventstore.data.ReadOptions;
 import nl.pancompany.eventstore.data.SequencePosition;
 import nl.pancompany.eventstore.data.SequencedEvent;
 
-import java.lang.reflect.Constructor;
-import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BiConsumer;
+import java.util.function.BiPredicate;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 import static java.util.Objects.requireNonNull;
@@ -26,155 +33,253 @@ public class EventBus implements AutoCloseable {
 
     private static final int EXCEPTION_QUEUE_CAPACITY = 100;
     private final EventStore eventStore;
-    private final Map<Type, Set<InvocableFilteringEventHandler>> synchronousEventHandlers = new HashMap<>();
-    private final Map<Type, Set<InvocableFilteringEventHandler>> asynchronousEventHandlers = new HashMap<>();
-    private final Map<Type, Set<InvocableFilteringEventHandler>> synchronousReplayableEventHandlers = new HashMap<>();
-    private final Map<Type, Set<InvocableFilteringEventHandler>> asynchronousReplayableEventHandlers = new HashMap<>();
-    private final ExecutorService executor = Executors.newSingleThreadExecutor();
-    private final Set<Runnable> synchronousResetHandlers = new HashSet<>();
-    private final Set<Runnable> asynchronousResetHandlers = new HashSet<>();
+    private final EventHandlerIndex synchronousEventHandlers = new EventHandlerIndex();
+    private final EventHandlerIndex asynchronousEventHandlers = new EventHandlerIndex();
+    private final List<RegisteredEventHandler> registeredEventHandlers = new CopyOnWriteArrayList<>();
+    private final ThreadFactory laneThreadFactory;
+    private final List<ExecutorService> lanes = new CopyOnWriteArrayList<>(); // owned lanes, one per asynchronous handler
     private final Queue<LoggedException> loggedExceptions = new ArrayDeque<>(EXCEPTION_QUEUE_CAPACITY);
 
     EventBus(EventStore eventStore) {
+        this(eventStore, Thread.ofVirtual().name("event-handler-", 0).factory());
+    }
+
+    /**
+     * @param laneThreadFactory Creates the thread of the lane of each asynchronous event handler that is registered
+     *                          without an executor. Defaults to virtual threads.
+     */
+    EventBus(EventStore eventStore, ThreadFactory laneThreadFactory) {
         this.eventStore = eventStore;
+        this.laneThreadFactory = laneThreadFactory;
         registerShutdownHook();
     }
 
     public <T> T registerSynchronousEventHandler(Class<T> eventHandlerClass) {
         requireNonNull(eventHandlerClass);
         T eventHandlerInstance = createInstance(eventHandlerClass);
-        registerResetHandler(eventHandlerClass, eventHandlerInstance, true);
-        registerEventHandler(eventHandlerClass, eventHandlerInstance, true);
+        registerEventHandler(eventHandlerClass, eventHandlerInstance, true, EventHandlerOptions.defaults());
         return eventHandlerInstance;
     }
 
+    /**
+     * Every asynchronous event handler gets its own lane, on which it handles events in order, independent of other
+     * asynchronous event handlers.
+     */
     public <T> T registerAsynchronousEventHandler(Class<T> eventHandlerClass) {
+        return registerAsynchronousEventHandler(eventHandlerClass, EventHandlerOptions.defaults());
+    }
+
+    /**
+     * @param executor The executor the lane of this event handler runs on. Events are still handled one at a time and
+     *                 in order. The executor is owned by the caller, and is not shut down when the event bus is closed.
+     */
+    public <T> T registerAsynchronousEventHandler(Class<T> eventHandlerClass, Executor executor) {
+        requireNonNull(executor);
+        return registerAsynchronousEventHandler(eventHandlerClass, EventHandlerOptions.builder().withExecutor(executor).build());
+    }
+
+    public <T> T registerAsynchronousEventHandler(Class<T> eventHandlerClass, EventHandlerOptions options) {
         requireNonNull(eventHandlerClass);
+        requireNonNull(options);
         T eventHandlerInstance = createInstance(eventHandlerClass);
-        registerResetHandler(eventHandlerClass, eventHandlerInstance, false);
-        registerEventHandler(eventHandlerClass, eventHandlerInstance, false);
+        registerEventHandler(eventHandlerClass, eventHandlerInstance, false, options);
         return eventHandlerInstance;
     }
 
     @SuppressWarnings("unchecked")
     private static <T> T createInstance(Class<T> eventHandlerClass) {
+        Supplier<Object> noArgsConstructor = Dispatchers.of(eventHandlerClass).noArgsConstructor();
+        if (noArgsConstructor == null) {
+            throw new IllegalArgumentException(String.format("Event handler class must have a no-args " +
+                    "constructor. Class: %s", eventHandlerClass.getName()));
+        }
         try {
-            Constructor<?> noArgConstructor = Arrays.stream(eventHandlerClass.getDeclaredConstructors())
-                    .filter(constructor -> constructor.getParameterCount() == 0)
-                    .findFirst()
-                    .orElseThrow(() -> new IllegalArgumentException(String.format("Event handler class must have a no-args " +
-                            "constructor. Class: %s", eventHandlerClass.getName())));
-            noArgConstructor.setAccessible(true);
-            return (T) noArgConstructor.newInstance();
-        } catch (InstantiationException | InvocationTargetException | IllegalAccessException e) {
+            return (T) noArgsConstructor.get();
+        } catch (Exception e) {
             throw new RuntimeException(e);
         }
     }
 
     public void registerSynchronousEventHandler(Object eventHandlerInstance) {
         requireNonNull(eventHandlerInstance);
-        registerResetHandler(eventHandlerInstance.getClass(), eventHandlerInstance, true);
-        registerEventHandler(eventHandlerInstance.getClass(), eventHandlerInstance, true);
+        registerEventHandler(eventHandlerInstance.getClass(), eventHandlerInstance, true, EventHandlerOptions.defaults());
     }
 
+    /**
+     * Every asynchronous event handler gets its own lane, on which it handles events in order, independent of other
+     * asynchronous event handlers.
+     */
     public void registerAsynchronousEventHandler(Object eventHandlerInstance) {
+        registerAsynchronousEventHandler(eventHandlerInstance, EventHandlerOptions.defaults());
+    }
+
+    /**
+     * @param executor The executor the lane of this event handler runs on. Events are still handled one at a time and
+     *                 in order. The executor is owned by the caller, and is not shut down when the event bus is closed.
+     */
+    public void registerAsynchronousEventHandler(Object eventHandlerInstance, Executor executor) {
+        requireNonNull(executor);
+        registerAsynchronousEventHandler(eventHandlerInstance, EventHandlerOptions.builder().withExecutor(executor).build());
+    }
+
+    public void registerAsynchronousEventHandler(Object eventHandlerInstance, EventHandlerOptions options) {
         requireNonNull(eventHandlerInstance);
-        registerResetHandler(eventHandlerInstance.getClass(), eventHandlerInstance, false);
-        registerEventHandler(eventHandlerInstance.getClass(), eventHandlerInstance, false);
+        requireNonNull(options);
+        registerEventHandler(eventHandlerInstance.getClass(), eventHandlerInstance, false, options);
     }
 
-    private void registerResetHandler(Class<?> eventHandlerClass, Object instance, boolean synchronous) {
-        Set<Method> resetHandlerMethods = getResetHandlers(eventHandlerClass, instance);
-        resetHandlerMethods.forEach(method -> method.setAccessible(true));
-        Set<Runnable> resetHandlers = synchronous ? synchronousResetHandlers : asynchronousResetHandlers;
-        resetHandlerMethods.forEach(method -> resetHandlers.add(() -> invokeResetHandler(method, instance)));
+    private Executor createLane() {
+        ExecutorService lane = Executors.newSingleThreadExecutor(laneThreadFactory);
+        lanes.add(lane);
+        return lane;
     }
 
     /**
-     * Recursively find all reset handlers in the inheritance hierarchy, overwriting reset handlers from superclasses
-     * with reset handlers from subclasses for the same event type.
+     * Registers the handler instance with its own {@link EventHandlerSequence}, which starts delivering events appended
+     * after registration, or from the starting position in the options. Tracking event handlers resume after their
+     * stored checkpoint. Asynchronous event handlers with partitioned event handler methods, see
+     * {@link EventHandler#partitionBy()}, get one sequence (and lane) per partition. Event handlers can be registered
+     * while other threads are appending events, see {@link EventHandlerIndex}.
+     *
+     * @param options Options of an asynchronous event handler, ignored for synchronous event handlers
      */
-    private Set<Method> getResetHandlers(Class<?> clazz, Object instance) {
-        if (clazz == null) {
-            return new HashSet<>(); // base case
+    private void registerEventHandler(Class<?> eventHandlerClass, Object instance, boolean synchronous,
+                                      EventHandlerOptions options) {
+        Dispatcher dispatcher = Dispatchers.of(eventHandlerClass);
+        Set<Runnable> resetHandlers = getResetHandlerRunnables(dispatcher, instance);
+        List<EventHandlerDefinition> eventHandlerDefinitions = dispatcher.eventHandlers();
+        List<EventHandlerDefinition> replayableEventHandlerDefinitions = eventHandlerDefinitions.stream()
+                .filter(EventHandlerDefinition::replayable)
+                .toList();
+        Map<Type, InvocableFilteringEventHandler> eventHandlers = toInvocableEventHandlers(eventHandlerDefinitions,
+                instance, false);
+        Map<Type, InvocableFilteringEventHandler> replayableEventHandlers = toInvocableEventHandlers(
+                replayableEventHandlerDefinitions, instance, true);
+        Map<Type, String> partitionKeyPrefixes = synchronous ? Map.of() : getPartitionKeyPrefixes(eventHandlerDefinitions);
+        int partitions = partitionKeyPrefixes.isEmpty() ? 1 : getPartitionCount(eventHandlerDefinitions);
+        int startPosition = options.startingPosition() == null ?
+                eventStore.getPublishedPosition() + 1 : options.startingPosition().value();
+        Checkpointer checkpointer = null;
+        if (!synchronous && options.checkpointStore() != null) {
+            startPosition = Checkpointer.getStartPosition(options.checkpointStore(), options.trackingName(),
+                    options.startingPosition() == null ? 0 : options.startingPosition().value());
+            checkpointer = new Checkpointer(options.checkpointStore(), options.trackingName(),
+                    options.eventsBetweenCheckpoints(), options.timeBetweenCheckpoints().toNanos(), startPosition);
         }
-        Set<Method> resetHandlerMethods = getResetHandlers(clazz.getSuperclass(), instance);
-        Set<Method> newResetHandlerMethods = Arrays.stream(clazz.getDeclaredMethods()).filter(
-                method -> method.isAnnotationPresent(ResetHandler.class)).collect(toSet());
-        if (newResetHandlerMethods.size() > 1) {
-            throw new IllegalArgumentException("Multiple reset handlers per class are not allowed.");
+        List<EventHandlerSequence> sequences = new ArrayList<>(partitions);
+        for (int partition = 0; partition < partitions; partition++) {
+            Executor lane = synchronous ? null : options.executor() == null ? createLane() : new SerialExecutor(options.executor());
+            sequences.add(new EventHandlerSequence(eventStore,
+                    eventHandlerClass.getName(),
+                    partition,
+                    eventHandlers,
+                    replayableEventHandlers,
+                    partition == 0 ? resetHandlers : Set.of(), // reset once, for all partitions
+                    lane,
+                    partitions == 1 ? (type, tags) -> true : inPartition(partition, partitions, partitionKeyPrefixes),
+                    options,
+                    checkpointer,
+                    startPosition));
         }
-        resetHandlerMethods.addAll(newResetHandlerMethods);
-        return resetHandlerMethods;
+        if (checkpointer != null) {
+            checkpointer.track(sequences);
+        }
+        registeredEventHandlers.add(new RegisteredEventHandler(instance, synchronous, sequences, checkpointer,
+                getReplayQuery(replayableEventHandlerDefinitions)));
+        EventHandlerIndex eventHandlerIndex = synchronous ? synchronousEventHandlers : asynchronousEventHandlers;
+        int countedFrom = startPosition;
+        eventStore.runExclusively(() -> { // appends count the events of the sequence from here on
+            int firstAppendedPosition = Math.max(countedFrom, eventStore.getPublishedPosition() + 1);
+            sequences.forEach(sequence -> sequence.startCountingFrom(firstAppendedPosition));
+            eventHandlerIndex.add(eventHandlerDefinitions.stream().collect(Collectors.toMap(
+                    EventHandlerDefinition::type,
+                    EventHandlerDefinition::requiredTags
+            )), sequences);
+        });
+        sequences.forEach(EventHandlerSequence::catchUp); // history, and events appended while registering
     }
 
-    private void invokeResetHandler(Method method, Object instance) {
-        try {
-            method.invoke(instance);
-        } catch (IllegalAccessException e) {
-            log.warn("Could not invoke reset handler {}", method, e);
-            logException(LoggedException.of("Could not invoke reset handler %s".formatted(method), e));
-        } catch (InvocationTargetException e) {
-            log.warn("Reset handler threw exception. Method: {}", method, e);
-            logException(LoggedException.of("Reset handler threw exception. Method: %s".formatted(method), e.getCause()));
-        }
+    private static Map<Type, String> getPartitionKeyPrefixes(List<EventHandlerDefinition> eventHandlerDefinitions) {
+        Map<Type, String> partitionKeyPrefixes = new HashMap<>();
+        eventHandlerDefinitions.forEach(definition -> {
+            if (!definition.partitionBy().isBlank()) {
+                partitionKeyPrefixes.put(definition.type(), definition.partitionBy());
+            }
+        });
+        return partitionKeyPrefixes;
     }
 
-    private void registerEventHandler(Class<?> eventHandlerClass, Object instance, boolean synchronous) {
-        Map<Type, InvocableFilteringEventHandler> newEventHandlers = getNewEventHandlers(eventHandlerClass, instance, false);
-        Map<Type, Set<InvocableFilteringEventHandler>> eventHandlers = synchronous ? synchronousEventHandlers : asynchronousEventHandlers;
-        newEventHandlers.keySet().forEach(key -> eventHandlers.computeIfAbsent(key, type -> new HashSet<>())
-                .add(newEventHandlers.get(key)));
+    private static int getPartitionCount(List<EventHandlerDefinition> eventHandlerDefinitions) {
+        int partitions = eventHandlerDefinitions.stream()
+                .filter(definition -> !definition.partitionBy().isBlank())
+                .mapToInt(EventHandlerDefinition::partitions)
+                .max().orElse(1);
+        if (partitions < 1) {
+            throw new IllegalArgumentException("Event handler partitions must be at least 1.");
+        }
+        return partitions;
+    }
 
-        Map<Type, InvocableFilteringEventHandler> newReplayableEventHandlers = getNewEventHandlers(eventHandlerClass, instance, true);
-        Map<Type, Set<InvocableFilteringEventHandler>> replayableEventHandlers = synchronous ? synchronousReplayableEventHandlers : asynchronousReplayableEventHandlers;
-        newReplayableEventHandlers.keySet().forEach(key -> replayableEventHandlers.computeIfAbsent(key, type -> new HashSet<>())
-                .add(newReplayableEventHandlers.get(key)));
+    private static BiPredicate<Type, Set<Tag>> inPartition(int partition, int partitions, Map<Type, String> partitionKeyPrefixes) {
+        return (type, tags) -> getPartition(type, tags, partitions, partitionKeyPrefixes) == partition;
     }
 
     /**
-     * Recursively find all event handlers in the inheritance hierarchy, overwriting eventhandlers from superclasses
-     * with eventhandlers from subclasses for the same event type.
+     * The partition key of an event is its first tag (in natural order) that starts with the partition key prefix of
+     * its event handler method. Events without partition key go to the first partition.
      */
-    private Map<Type, InvocableFilteringEventHandler> getNewEventHandlers(Class<?> clazz, Object instance, boolean onlyReplayable) {
-        if (clazz == null) {
-            return new HashMap<>(); // base case
+    private static int getPartition(Type type, Set<Tag> tags, int partitions, Map<Type, String> partitionKeyPrefixes) {
+        String partitionKeyPrefix = partitionKeyPrefixes.get(type);
+        if (partitionKeyPrefix == null) {
+            return 0;
         }
-        Map<Type, InvocableFilteringEventHandler> newEventHandlers = getNewEventHandlers(clazz.getSuperclass(), instance, onlyReplayable);
-        Set<Method> eventHandlerMethods = Arrays.stream(clazz.getDeclaredMethods())
-                .filter(method -> method.isAnnotationPresent(EventHandler.class))
-                .filter(method -> !onlyReplayable || isReplayEnabled(method))
+        return tags.stream()
+                .map(Tag::tag)
+                .filter(tag -> tag.startsWith(partitionKeyPrefix))
+                .min(Comparator.naturalOrder())
+                .map(partitionKey -> Math.floorMod(partitionKey.hashCode(), partitions))
+                .orElse(0);
+    }
+
+    private Set<Runnable> getResetHandlerRunnables(Dispatcher dispatcher, Object instance) {
+        return dispatcher.resetHandlers().stream()
+                .map(resetHandler -> (Runnable) () -> invokeResetHandler(resetHandler, instance))
                 .collect(toSet());
-        eventHandlerMethods.forEach(method -> method.setAccessible(true));
-        newEventHandlers.putAll(eventHandlerMethods.stream().collect(Collectors.toMap(
-                this::getEventType,
-                method -> (event, eventTags) -> {
-                    Set<Tag> requiredTags = getRequiredTags(method);
-                    if (eventTags.containsAll(requiredTags)) {
-                        invoke(method, instance, event);
-                    }
-                }
-        )));
-        return newEventHandlers;
     }
 
-    private boolean isReplayEnabled(Method eventHandlerMethod) {
-        EventHandler annotation = eventHandlerMethod.getAnnotation(EventHandler.class);
-        return annotation.enableReplay();
+    /**
+     * Reset handlers only run when replaying, so their exceptions are rethrown to fail the replay.
+     */
+    private void invokeResetHandler(Consumer<Object> resetHandler, Object instance) {
+        try {
+            resetHandler.accept(instance);
+        } catch (Exception e) {
+            log.warn("Reset handler threw exception. Class: {}", instance.getClass().getName(), e);
+            logException(LoggedException.of("Reset handler threw exception. Class: %s".formatted(instance.getClass().getName()), e));
+            throw e;
+        }
     }
 
-    private Set<Tag> getRequiredTags(Method eventHandlerMethod) {
-        EventHandler eventHandler = eventHandlerMethod.getAnnotation(EventHandler.class);
-        return Arrays.stream(eventHandler.requiredTags()).map(Tag::new).collect(toSet());
+    /**
+     * @param replaying Whether the event handlers replay, in which case their exceptions are rethrown to fail the
+     *                  replay, after logging them
+     */
+    private Map<Type, InvocableFilteringEventHandler> toInvocableEventHandlers(List<EventHandlerDefinition> eventHandlerDefinitions,
+                                                                               Object instance, boolean replaying) {
+        Map<Type, InvocableFilteringEventHandler> eventHandlers = new HashMap<>();
+        eventHandlerDefinitions.forEach(definition -> eventHandlers.put(definition.type(),
+                new InvocableFilteringEventHandler(definition.requiredTags(), definition.batching(),
+                        event -> invoke(definition.handler(), instance, event, replaying))));
+        return eventHandlers;
     }
 
-    private Type getEventType(Method eventHandlerMethod) {
-        if (eventHandlerMethod.getParameters().length != 1) {
-            throw new IllegalArgumentException("Event handler method must have exactly one parameter.");
-        }
-        Class<?> declaredParameterType = eventHandlerMethod.getParameters()[0].getType();
-        EventHandler annotation = eventHandlerMethod.getAnnotation(EventHandler.class);
-        return Type.getTypeForAnnotatedParameter(annotation, declaredParameterType);
+    /**
+     * @return Query for the events that the given event handler methods handle: their types, with their required tags
+     */
+    private Query getReplayQuery(List<EventHandlerDefinition> replayableEventHandlerDefinitions) {
+        return Query.or(replayableEventHandlerDefinitions.stream()
+                .map(definition -> new QueryItem(definition.requiredTags(), Set.of(definition.type())))
+                .toArray(QueryItem[]::new));
     }
 
     /**
@@ -187,66 +292,283 @@ public class EventBus implements AutoCloseable {
     /**
      * Resets and replays events to registered replayable event handlers, see {@link EventHandler#enableReplay()}.
      *
+     * Each registered event handler reads only the events that its replayable event handler methods handle, using the
+     * type and tag indexes of the event store. It reads them once its live delivery is paused, up to the events it has
+     * delivered live so far, so each event is handled once. A replay stops at the first exception of a reset handler or event handler method,
+     * which is logged. For synchronous event handlers, it is rethrown as well, and the remaining event handlers are not
+     * replayed.
+     *
      * @param end end position, exclusive, starting from sequence position of 0
      */
     synchronized public void replay(SequencePosition end) {
-        List<SequencedEvent> eventsToReplay = eventStore.read(Query.all(), ReadOptions.builder()
-                .withStoppingPosition(end)
-                .build());
-        synchronousResetHandlers.forEach(Runnable::run);
-        asynchronousResetHandlers.forEach(executor::submit);
-        eventsToReplay.forEach(this::invokeReplayableEventHandlers);
+        AtomicBoolean cancelled = new AtomicBoolean();
+        registeredEventHandlers.stream().filter(RegisteredEventHandler::synchronous)
+                .forEach(registeredEventHandler -> registeredEventHandler.replay(SequencePosition.of(0), end, cancelled));
+        registeredEventHandlers.stream().filter(registeredEventHandler -> !registeredEventHandler.synchronous())
+                .forEach(registeredEventHandler -> registeredEventHandler.replay(SequencePosition.of(0), end, cancelled));
+    }
+
+    /**
+     * Resets and replays all events to registered replayable event handlers in parallel, see
+     * {@link #replayInParallel(SequencePosition)}.
+     */
+    synchronized public void replayInParallel() {
+        replayInParallel(null);
+    }
+
+    /**
+     * Resets and replays events to registered replayable event handlers, see {@link EventHandler#enableReplay()}.
+     * Registered event handler instances are independent of each other, so each one replays on its own thread: a
+     * virtual thread for synchronous event handlers, the lane for asynchronous event handlers. Unlike
+     * {@link #replay(SequencePosition)}, this method waits until all event handlers have replayed, so it takes about as
+     * long as the slowest event handler. Each event handler reads its own events, see {@link #replay(SequencePosition)}.
+     * <p>
+     * If a reset handler or event handler method throws, the other replays are cancelled, and the exception is rethrown
+     * once the replays of synchronous event handlers have stopped. If the calling thread is interrupted, the replays
+     * are cancelled as well. Replays stop between events, so cancelled event handlers are left partially replayed,
+     * until they are replayed again.
+     *
+     * @param end end position, exclusive, starting from sequence position of 0
+     */
+    synchronized public void replayInParallel(SequencePosition end) {
+        AtomicBoolean cancelled = new AtomicBoolean();
+        try (ExecutorService replayThreads = Executors.newThreadPerTaskExecutor(
+                Thread.ofVirtual().name("replay-", 0).factory())) {
+            List<CompletableFuture<Void>> replays = new ArrayList<>();
+            for (RegisteredEventHandler registeredEventHandler : registeredEventHandlers) {
+                replays.add(registeredEventHandler.synchronous() ?
+                        CompletableFuture.runAsync(() -> registeredEventHandler.replay(SequencePosition.of(0), end, cancelled),
+                                replayThreads) :
+                        registeredEventHandler.replay(SequencePosition.of(0), end, cancelled));
+            }
+            awaitReplays(replays, cancelled);
+        }
+    }
+
+    /**
+     * Waits until all replays have finished, or until the first one fails.
+     */
+    private static void awaitReplays(List<CompletableFuture<Void>> replays, AtomicBoolean cancelled) {
+        CompletableFuture<Void> firstFailure = new CompletableFuture<>();
+        replays.forEach(replay -> replay.whenComplete((result, e) -> {
+            if (e != null) {
+                firstFailure.completeExceptionally(e instanceof CompletionException ? e.getCause() : e);
+            }
+        }));
+        try {
+            CompletableFuture.anyOf(CompletableFuture.allOf(replays.toArray(CompletableFuture[]::new)), firstFailure)
+                    .get();
+        } catch (InterruptedException e) {
+            cancelled.set(true);
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            cancelled.set(true);
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            if (e.getCause() instanceof Error error) {
+                throw error;
+            }
+            throw new RuntimeException("Replay failed", e.getCause());
+        }
     }
 
-    void invokeAllEventHandlers(SequencedEvent sequencedEvent) {
-        invokeEventHandlers(sequencedEvent, asynchronousEventHandlers, synchronousEventHandlers);
+    /**
+     * Resets and replays events to a single registered event handler instance, see {@link EventHandler#enableReplay()}.
+     * Other event handlers are neither reset nor replayed to. Only the events that its replayable event handler methods
+     * handle are read, using the type and tag indexes of the event store. Asynchronous event handlers replay in the
+     * background on their own lane, and pause live delivery while replaying. The events are read once live delivery is
+     * paused, and only up to the events delivered live so far; later events are delivered live afterwards, so each event
+     * is handled once.
+     * <p>
+     * To rebuild a projection while the old one keeps serving, register a new instance as a catch-up subscription
+     * instead, see {@link EventHandlerOptions.EventHandlerOptionsBuilder#withStartingPosition(int)}, and switch over to
+     * it once its lag is 0.
+     *
+     * @param from start position, inclusive, or null to replay from the start of the event log
+     * @param to   end position, exclusive, or null to replay up to the events delivered live so far
+     */
+    synchronized public void replay(Object eventHandlerInstance, SequencePosition from, SequencePosition to) {
+        requireNonNull(eventHandlerInstance);
+        RegisteredEventHandler registeredEventHandler = registeredEventHandlers.stream()
+                .filter(registered -> registered.instance() == eventHandlerInstance)
+                .findFirst()
+                .orElseThrow(() -> new IllegalArgumentException("Event handler %s is not registered."
+                        .formatted(eventHandlerInstance.getClass().getName())));
+        registeredEventHandler.replay(from == null ? SequencePosition.of(0) : from, to, new AtomicBoolean());
     }
 
-    void invokeReplayableEventHandlers(SequencedEvent sequencedEvent) {
-        invokeEventHandlers(sequencedEvent, asynchronousReplayableEventHandlers, synchronousReplayableEventHandlers);
+    /**
+     * Counts the appended events as pending for the sequences of all handlers that are interested in them. Called
+     * while the appending thread holds the write lock of the event store, so the events are counted before any thread
+     * can deliver them. Handlers that are not interested in any of the appended events, by type or by required tags,
+     * are not visited.
+     *
+     * @return The sequences to dispatch the appended events to, see {@link #dispatch(Dispatch)}
+     */
+    Dispatch prepareDispatch(List<SequencedEvent> appendedEvents) {
+        if (appendedEvents.isEmpty()) {
+            return null;
+        }
+        return new Dispatch(appendedEvents.getLast().position().value(),
+                countPendingEvents(appendedEvents, asynchronousEventHandlers),
+                countPendingEvents(appendedEvents, synchronousEventHandlers));
     }
 
-    private void invokeEventHandlers(SequencedEvent sequencedEvent,
-                                     Map<Type, Set<InvocableFilteringEventHandler>> asynchronousEventHandlers,
-                                     Map<Type, Set<InvocableFilteringEventHandler>> synchronousEventHandlers) {
-        if (asynchronousEventHandlers.containsKey(sequencedEvent.type())) {
-            executor.submit(() -> asynchronousEventHandlers.get(sequencedEvent.type()).forEach(
-                    eventHandler -> eventHandler.invoke(sequencedEvent.payload(), sequencedEvent.tags())
-            ));
+    private static Set<EventHandlerSequence> countPendingEvents(List<SequencedEvent> appendedEvents,
+                                                                EventHandlerIndex eventHandlers) {
+        Set<EventHandlerSequence> interestedSequences = new LinkedHashSet<>();
+        for (SequencedEvent event : appendedEvents) {
+            eventHandlers.forEachMatching(event.type(), event.tags(), sequence -> {
+                if (sequence.accepts(event.type(), event.tags()) && sequence.countPending(event)) {
+                    interestedSequences.add(sequence);
+                }
+            });
         }
-        if (synchronousEventHandlers.containsKey(sequencedEvent.type())) {
-            synchronousEventHandlers.get(sequencedEvent.type())
-                    .forEach(eventHandler -> eventHandler.invoke(sequencedEvent.payload(), sequencedEvent.tags()));
+        return interestedSequences;
+    }
+
+    /**
+     * Signals the sequences of all handlers that are interested in the appended events, after the write lock is
+     * released. Asynchronous handlers are delivered to in the background; for synchronous handlers, the appending
+     * thread waits until they have handled (at least) the appended events.
+     * Finally, the appending thread waits for asynchronous handlers with the
+     * {@link EventHandlerOptions.OverflowPolicy#BLOCK} policy that are over capacity.
+     * <p>
+     * If the executor of an asynchronous handler rejects the delivery, the events are still delivered to the other
+     * handlers, and the rejection is rethrown. The events are stored, and are delivered to the rejecting handler once
+     * its executor accepts a delivery again.
+     *
+     * @param dispatch The prepared dispatch, or null if no events were appended
+     * @throws RejectedExecutionException If the executor of an asynchronous handler rejected the delivery
+     */
+    void dispatch(Dispatch dispatch) {
+        if (dispatch == null) {
+            return;
+        }
+        List<EventHandlerSequence> scheduledSequences = new ArrayList<>(dispatch.asynchronousSequences().size());
+        RejectedExecutionException rejected = null;
+        for (EventHandlerSequence sequence : dispatch.asynchronousSequences()) {
+            try {
+                sequence.scheduleDeliveryUpTo(dispatch.lastPosition());
+                scheduledSequences.add(sequence);
+            } catch (RejectedExecutionException e) { // other handlers still get the events
+                rejected = e;
+            }
+        }
+        dispatch.synchronousSequences().forEach(sequence -> sequence.deliverUpTo(dispatch.lastPosition()));
+        try {
+            for (EventHandlerSequence sequence : scheduledSequences) {
+                sequence.awaitCapacity();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (rejected != null) {
+            throw rejected;
+        }
+    }
+
+    /**
+     * The sequences that counted appended events as pending, and are to be delivered up to the last appended position.
+     */
+    record Dispatch(int lastPosition, Set<EventHandlerSequence> asynchronousSequences,
+                    Set<EventHandlerSequence> synchronousSequences) {
+    }
+
+    /**
+     * Checks, before appending, whether the events would exceed the capacity of asynchronous event handlers with
+     * the {@link EventHandlerOptions.OverflowPolicy#FAIL} policy.
+     */
+    void checkCapacity(List<Event> events) {
+        getInterestedSequences(events, Event::type, Event::tags, asynchronousEventHandlers)
+                .forEach(EventHandlerSequence::checkCapacity);
+    }
+
+    /**
+     * @return For each interested sequence, the number of events it accepts
+     */
+    private static <E> Map<EventHandlerSequence, Integer> getInterestedSequences(List<E> events,
+                                                                              Function<E, Type> typeOf,
+                                                                              Function<E, Set<Tag>> tagsOf,
+                                                                              EventHandlerIndex eventHandlers) {
+        Map<EventHandlerSequence, Integer> interestedSequences = new LinkedHashMap<>();
+        for (E event : events) {
+            Type type = typeOf.apply(event);
+            Set<Tag> tags = tagsOf.apply(event);
+            eventHandlers.forEachMatching(type, tags, sequence -> {
+                if (sequence.accepts(type, tags)) {
+                    interestedSequences.merge(sequence, 1, Integer::sum);
+                }
+            });
         }
+        return interestedSequences;
+    }
+
+    /**
+     * @return Lag and queue depth of every registered event handler, per partition
+     */
+    public List<EventHandlerMetrics> getEventHandlerMetrics() {
+        return registeredEventHandlers.stream()
+                .flatMap(registeredEventHandler -> registeredEventHandler.sequences().stream())
+                .map(EventHandlerSequence::getMetrics)
+                .toList();
     }
 
-    private void invoke(Method method, Object instance, Object eventPayload) {
+    private void invoke(BiConsumer<Object, Object> eventHandler, Object instance, Object eventPayload, boolean rethrow) {
         try {
-            method.invoke(instance, eventPayload);
-        } catch (IllegalAccessException e) {
-            log.warn("Could not invoke handler method for event {}", eventPayload, e);
-            logException(LoggedException.of("Could not invoke handler method for event %s".formatted(eventPayload), e));
-        } catch (InvocationTargetException e) {
+            eventHandler.accept(instance, eventPayload);
+        } catch (Exception e) {
             log.warn("Invoked handler threw exception for event {}", eventPayload, e);
-            logException(LoggedException.of("Invoked handler threw exception for event %s".formatted(eventPayload), e.getCause()));
+            logException(LoggedException.of("Invoked handler threw exception for event %s".formatted(eventPayload), e));
+            if (rethrow) {
+                throw e;
+            }
         }
     }
 
     @Override
     public void close() {
         try {
-            shutdownExecutor(executor, 10, TimeUnit.SECONDS);
+            shutdownExecutors(lanes, 10, TimeUnit.SECONDS);
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
+        } finally {
+            storeCheckpoints();
         }
     }
 
-    private static void shutdownExecutor(ExecutorService executorService, long timeout, TimeUnit unit)
+    /**
+     * Stores the last processed position of all tracking event handlers, regardless of the checkpoint interval.
+     */
+    private void storeCheckpoints() {
+        registeredEventHandlers.stream()
+                .map(RegisteredEventHandler::checkpointer)
+                .filter(Objects::nonNull)
+                .forEach(checkpointer -> {
+                    try {
+                        checkpointer.checkpoint();
+                    } catch (RuntimeException e) {
+                        log.warn("Could not store checkpoint", e);
+                    }
+                });
+    }
+
+    /**
+     * Shuts down all executors at once, so that they finish their pending tasks in parallel within the given timeout.
+     */
+    private static void shutdownExecutors(List<ExecutorService> executorServices, long timeout, TimeUnit unit)
             throws InterruptedException {
-        executorService.shutdown();
-        if (!executorService.awaitTermination(timeout, unit)) {
-            executorService.shutdownNow();
-            executorService.awaitTermination(timeout, unit);
+        executorServices.forEach(ExecutorService::shutdown);
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        for (ExecutorService executorService : executorServices) {
+            if (!executorService.awaitTermination(deadline - System.nanoTime(), TimeUnit.NANOSECONDS)) {
+                executorService.shutdownNow();
+            }
+        }
+        deadline = System.nanoTime() + unit.toNanos(timeout);
+        for (ExecutorService executorService : executorServices) {
+            executorService.awaitTermination(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
         }
     }
 
@@ -254,9 +576,11 @@ public class EventBus implements AutoCloseable {
         Runtime.getRuntime().addShutdownHook(
                 Thread.ofPlatform().name("shutdown-hook").unstarted(() -> {
                     try {
-                        shutdownExecutor(executor, 5, TimeUnit.SECONDS);
+                        shutdownExecutors(lanes, 5, TimeUnit.SECONDS);
                     } catch (InterruptedException e) {
                         Thread.currentThread().interrupt();
+                    } finally {
+                        storeCheckpoints();
                     }
                 })
         );
@@ -287,8 +611,22 @@ public class EventBus implements AutoCloseable {
         }
     }
 
-    @FunctionalInterface
-    private interface InvocableFilteringEventHandler {
-        void invoke(Object event, Set<Tag> eventTagsToMatch);
+    /**
+     * An event handler method, bound to its event handler instance.
+     *
+     * @param batching Whether the method takes a list of events, see {@link EventHandlerDefinition#batching()}
+     */
+    record InvocableFilteringEventHandler(Set<Tag> requiredTags, boolean batching, Consumer<Object> invoker) {
+
+        boolean matches(Set<Tag> eventTags) {
+            return eventTags.containsAll(requiredTags);
+        }
+
+        /**
+         * @param event The event payload, or a list of event payloads for batching methods
+         */
+        void invoke(Object event) {
+            invoker.accept(event);
+        }
     }
 }
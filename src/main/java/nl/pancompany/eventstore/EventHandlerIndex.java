@@ -0,0 +1,93 @@
+package nl.pancompany.eventstore;
+
+import nl.pancompany.eventstore.query.Tag;
+import nl.pancompany.eventstore.query.Type;
+
+import java.util.*;
+import java.util.function.Consumer;
+
+/**
+ * Index of event handler sequences by event type and required tag, so that dispatching an event only visits the
+ * sequences whose event handler method for that type can match the tags of the event. A sequence with required tags
+ * is indexed under one of them (the first in natural order), and is only looked up for events that carry that tag.
+ * <p>
+ * The index is copy-on-write: lookups read an immutable snapshot of flat arrays without locking, registrations copy
+ * the snapshot and swap it in atomically. Registering event handlers while events are being appended is therefore
+ * safe, and a registration becomes visible to all appending threads at once.
+ */
+class EventHandlerIndex {
+
+    private static final EventHandlerSequence[] NO_SEQUENCES = new EventHandlerSequence[0];
+    private static final IndexedSequence[] NO_INDEXED_SEQUENCES = new IndexedSequence[0];
+
+    private volatile Map<Type, TypeIndex> typeIndexes = Map.of();
+
+    /**
+     * Adds the sequences of a single event handler instance, which all handle the same types with the same required
+     * tags.
+     *
+     * @param requiredTagsByType Required tags of the event handler method of each type
+     */
+    synchronized void add(Map<Type, Set<Tag>> requiredTagsByType, List<EventHandlerSequence> sequences) {
+        Map<Type, TypeIndex> newTypeIndexes = new HashMap<>(typeIndexes);
+        requiredTagsByType.forEach((type, requiredTags) -> newTypeIndexes.put(type,
+                newTypeIndexes.getOrDefault(type, TypeIndex.EMPTY).with(requiredTags, sequences)));
+        typeIndexes = Map.copyOf(newTypeIndexes);
+    }
+
+    /**
+     * Visits each sequence with an event handler method for the given type whose required tags are all in the given
+     * tags, once.
+     */
+    void forEachMatching(Type type, Set<Tag> tags, Consumer<EventHandlerSequence> action) {
+        TypeIndex typeIndex = typeIndexes.get(type);
+        if (typeIndex == null) {
+            return;
+        }
+        for (EventHandlerSequence sequence : typeIndex.withoutRequiredTags()) {
+            action.accept(sequence);
+        }
+        if (typeIndex.byRequiredTag().isEmpty()) {
+            return;
+        }
+        for (Tag tag : tags) {
+            IndexedSequence[] indexedSequences = typeIndex.byRequiredTag().get(tag);
+            if (indexedSequences != null) {
+                for (IndexedSequence indexedSequence : indexedSequences) {
+                    if (tags.containsAll(indexedSequence.requiredTags())) {
+                        action.accept(indexedSequence.sequence());
+                    }
+                }
+            }
+        }
+    }
+
+    private record TypeIndex(EventHandlerSequence[] withoutRequiredTags, Map<Tag, IndexedSequence[]> byRequiredTag) {
+
+        private static final TypeIndex EMPTY = new TypeIndex(NO_SEQUENCES, Map.of());
+
+        private TypeIndex with(Set<Tag> requiredTags, List<EventHandlerSequence> sequences) {
+            if (requiredTags.isEmpty()) {
+                return new TypeIndex(append(withoutRequiredTags, sequences.toArray(NO_SEQUENCES)), byRequiredTag);
+            }
+            Tag indexTag = requiredTags.stream().min(Comparator.comparing(Tag::tag)).orElseThrow();
+            IndexedSequence[] indexedSequences = sequences.stream()
+                    .map(sequence -> new IndexedSequence(requiredTags, sequence))
+                    .toArray(IndexedSequence[]::new);
+            Map<Tag, IndexedSequence[]> newByRequiredTag = new HashMap<>(byRequiredTag);
+            newByRequiredTag.put(indexTag, append(byRequiredTag.getOrDefault(indexTag, NO_INDEXED_SEQUENCES),
+                    indexedSequences));
+            return new TypeIndex(withoutRequiredTags, Map.copyOf(newByRequiredTag));
+        }
+
+        private static <T> T[] append(T[] array, T[] elements) {
+            T[] newArray = Arrays.copyOf(array, array.length + elements.length);
+            System.arraycopy(elements, 0, newArray, array.length, elements.length);
+            return newArray;
+        }
+    }
+
+    private record IndexedSequence(Set<Tag> requiredTags, EventHandlerSequence sequence) {
+    }
+
+}
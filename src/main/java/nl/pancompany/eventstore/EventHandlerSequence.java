@@ -0,0 +1,523 @@
+package nl.pancompany.eventstore;
+
+import nl.pancompany.eventstore.EventBus.InvocableFilteringEventHandler;
+import nl.pancompany.eventstore.data.EventHandlerMetrics;
+import nl.pancompany.eventstore.data.EventHandlerOptions;
+import nl.pancompany.eventstore.data.EventHandlerOptions.OverflowPolicy;
+import nl.pancompany.eventstore.data.ReadOptions;
+import nl.pancompany.eventstore.data.SequencePosition;
+import nl.pancompany.eventstore.data.SequencedEvent;
+import nl.pancompany.eventstore.exception.EventHandlerOverflowException;
+import nl.pancompany.eventstore.query.Query;
+import nl.pancompany.eventstore.query.Tag;
+import nl.pancompany.eventstore.query.Type;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiPredicate;
+
+/**
+ * Ordered delivery sequence of a single registered event handler instance. The sequence keeps its own cursor into the
+ * event log, so every event is delivered exactly once and in log order, regardless of which thread drives delivery.
+ * <p>
+ * Asynchronous sequences have their own lane: an executor that runs the sequence's deliveries and replays one at a
+ * time, so a slow handler only delays itself. Pending events are not queued, the lane reads them from the log, so the
+ * log itself is the buffer. The number of pending events is bounded by the capacity of the sequence, see
+ * {@link OverflowPolicy}.
+ */
+class EventHandlerSequence {
+
+    private static final int MAX_READ_BATCH_SIZE = 1024; // bounds memory when catching up on a long history
+    private static final ThreadLocal<Boolean> delivering = ThreadLocal.withInitial(() -> false);
+
+    private final EventStore eventStore;
+    private final String name;
+    private final int partition;
+    private final Map<Type, InvocableFilteringEventHandler> eventHandlers;
+    private final Map<Type, InvocableFilteringEventHandler> replayableEventHandlers;
+    private final Set<Runnable> resetHandlers;
+    private final Executor lane; // null for synchronous sequences
+    private final BiPredicate<Type, Set<Tag>> filter; // selects the events of a partition
+    private final EventHandlerOptions options;
+    private final Checkpointer checkpointer; // null for untracked sequences
+    private final boolean batching; // has event handler methods that take a list of events
+    private final ReentrantLock lock = new ReentrantLock();
+    private final AtomicInteger requestedPosition;
+    private final AtomicBoolean deliveryScheduled = new AtomicBoolean();
+    private final AtomicInteger pendingEvents = new AtomicInteger(); // counted events that are not handled yet
+    private final AtomicInteger pendingBatchEvents = new AtomicInteger(); // pending events for batching methods
+    private final AtomicInteger blockedAppenders = new AtomicInteger();
+    private final ReentrantLock capacityLock = new ReentrantLock();
+    private final Condition capacityAvailable = capacityLock.newCondition();
+    private volatile int countedFrom = Integer.MAX_VALUE; // first position counted as pending, set on registration
+    private volatile int nextPosition; // only written while holding the lock
+    private volatile int lastProcessedPosition; // all events up to here are handled or skipped
+    private volatile Thread batchWaiter; // lane thread waiting for a batch to fill up
+
+    EventHandlerSequence(EventStore eventStore,
+                         String name,
+                         int partition,
+                         Map<Type, InvocableFilteringEventHandler> eventHandlers,
+                         Map<Type, InvocableFilteringEventHandler> replayableEventHandlers,
+                         Set<Runnable> resetHandlers,
+                         Executor lane,
+                         BiPredicate<Type, Set<Tag>> filter,
+                         EventHandlerOptions options,
+                         Checkpointer checkpointer,
+                         int startPosition) {
+        this.eventStore = eventStore;
+        this.name = name;
+        this.partition = partition;
+        this.eventHandlers = eventHandlers;
+        this.replayableEventHandlers = replayableEventHandlers;
+        this.resetHandlers = resetHandlers;
+        this.lane = lane;
+        this.filter = filter;
+        this.options = options;
+        this.checkpointer = checkpointer;
+        this.batching = eventHandlers.values().stream().anyMatch(InvocableFilteringEventHandler::batching);
+        this.nextPosition = startPosition;
+        this.lastProcessedPosition = startPosition - 1;
+        this.requestedPosition = new AtomicInteger(startPosition - 1);
+    }
+
+    /**
+     * @return Whether the event belongs to the partition of this sequence; type and required tags are matched by the
+     * {@link EventHandlerIndex}
+     */
+    boolean accepts(Type type, Set<Tag> tags) {
+        return filter.test(type, tags);
+    }
+
+    /**
+     * Starts counting the accepted events from the given position on as pending. Must be called while no events are
+     * appended, see {@link EventStore#runExclusively(Runnable)}, before the sequence can be found in the index. Events
+     * before the position (history, catch-up) are never counted, so they are not subtracted once handled either.
+     */
+    void startCountingFrom(int position) {
+        countedFrom = position;
+    }
+
+    /**
+     * Counts appended events that this sequence accepts as pending. Called while the appending thread holds the write
+     * lock of the event store, so before any thread can deliver the events. Events for batching event handler methods
+     * are counted separately as well, they decide whether a batch is full.
+     *
+     * @return Whether the event is counted
+     */
+    boolean countPending(SequencedEvent event) {
+        if (event.position().value() < countedFrom) {
+            return false;
+        }
+        pendingEvents.incrementAndGet();
+        InvocableFilteringEventHandler eventHandler = eventHandlers.get(event.type());
+        if (eventHandler != null && eventHandler.batching() && eventHandler.matches(event.tags())) {
+            pendingBatchEvents.incrementAndGet();
+        }
+        return true;
+    }
+
+    /**
+     * Delivers all events up to and including the given position. If another thread is delivering to this sequence,
+     * the call waits for that thread, unless the calling thread is itself delivering events (e.g. an event handler that
+     * appends events). In that case, the requested position is handed over to the thread holding the sequence, which
+     * prevents handlers that append events to each other from deadlocking.
+     */
+    void deliverUpTo(int lastPosition) {
+        requestedPosition.accumulateAndGet(lastPosition, Math::max);
+        if (delivering.get()) {
+            if (!lock.tryLock()) {
+                return; // holder delivers the requested position before releasing the sequence
+            }
+        } else {
+            lock.lock();
+        }
+        boolean wasDelivering = delivering.get();
+        delivering.set(true);
+        try {
+            do {
+                try {
+                    deliverRequestedEvents();
+                } finally {
+                    lock.unlock();
+                }
+            } while (requestedPosition.get() >= nextPosition && lock.tryLock()); // a hand-over may have raced the unlock
+        } finally {
+            delivering.set(wasDelivering);
+        }
+    }
+
+    /**
+     * Requests delivery up to and including the given position on the lane of this sequence. Requests are coalesced:
+     * at most one delivery is pending at any time, which delivers everything that was requested up to then.
+     */
+    void scheduleDeliveryUpTo(int lastPosition) {
+        requestedPosition.accumulateAndGet(lastPosition, Math::max);
+        Thread waiter = batchWaiter;
+        if (waiter != null && pendingBatchEvents.get() >= options.maxBatchSize()) {
+            LockSupport.unpark(waiter);
+        }
+        if (deliveryScheduled.compareAndSet(false, true)) {
+            try {
+                lane.execute(() -> {
+                    deliveryScheduled.set(false); // requests from here on schedule a new delivery
+                    awaitBatch();
+                    deliverUpTo(requestedPosition.get());
+                });
+            } catch (RejectedExecutionException e) {
+                deliveryScheduled.set(false); // the next request schedules the delivery again
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Waits until enough new events for the batching event handler methods of this sequence are pending to fill a batch,
+     * at most for the max batch delay. Catching up on history does not wait, the events are already in the log.
+     */
+    private void awaitBatch() {
+        if (!batching || options.maxBatchDelay().isZero()) {
+            return;
+        }
+        long deadline = System.nanoTime() + options.maxBatchDelay().toNanos();
+        batchWaiter = Thread.currentThread();
+        try {
+            long remaining;
+            while (pendingEvents.get() > 0 && pendingBatchEvents.get() < options.maxBatchSize()
+                    && (remaining = deadline - System.nanoTime()) > 0 && !Thread.currentThread().isInterrupted()) {
+                LockSupport.parkNanos(this, remaining);
+            }
+        } finally {
+            batchWaiter = null;
+        }
+    }
+
+    /**
+     * Delivers the events that were appended before this sequence was registered, from its start position up to the
+     * current end of the log, on the lane of this sequence, or on the calling thread for synchronous sequences.
+     * Appends after registration signal the sequence as usual, so delivery then continues seamlessly with live events.
+     */
+    void catchUp() {
+        int publishedPosition = eventStore.getPublishedPosition();
+        if (publishedPosition < nextPosition) {
+            return; // nothing to catch up on
+        }
+        if (lane == null) {
+            deliverUpTo(publishedPosition);
+        } else {
+            scheduleDeliveryUpTo(publishedPosition);
+        }
+    }
+
+    /**
+     * Fails if accepting the given number of new events would exceed the capacity of a sequence with the
+     * {@link OverflowPolicy#FAIL} policy.
+     */
+    void checkCapacity(int newEvents) {
+        if (options.overflowPolicy() == OverflowPolicy.FAIL && pendingEvents.get() + newEvents > options.capacity()) {
+            throw new EventHandlerOverflowException("Event handler %s (partition %s) has %s pending events, appending %s more would exceed its capacity of %s."
+                    .formatted(name, partition, pendingEvents.get(), newEvents, options.capacity()));
+        }
+    }
+
+    /**
+     * Waits until a sequence with the {@link OverflowPolicy#BLOCK} policy is back within its capacity. Threads that
+     * are delivering events themselves never wait.
+     */
+    void awaitCapacity() throws InterruptedException {
+        if (options.overflowPolicy() != OverflowPolicy.BLOCK || delivering.get()
+                || pendingEvents.get() <= options.capacity()) {
+            return;
+        }
+        blockedAppenders.incrementAndGet();
+        capacityLock.lock();
+        try {
+            while (pendingEvents.get() > options.capacity()) {
+                capacityAvailable.await();
+            }
+        } finally {
+            capacityLock.unlock();
+            blockedAppenders.decrementAndGet();
+        }
+    }
+
+    private void deliverRequestedEvents() {
+        boolean outermost = lock.getHoldCount() == 1; // nested deliveries run while an event is still being handled
+        Batcher batcher = new Batcher(options.maxBatchSize());
+        int target;
+        while ((target = requestedPosition.get()) >= nextPosition) {
+            List<SequencedEvent> events = eventStore.readRange(nextPosition, Math.min(target + 1, nextPosition + MAX_READ_BATCH_SIZE));
+            int handledEvents = 0;
+            for (SequencedEvent event : events) {
+                if (event.position().value() < nextPosition) {
+                    continue; // already delivered by a nested (reentrant) delivery
+                }
+                nextPosition = event.position().value() + 1; // advance before invoking, handlers may append
+                InvocableFilteringEventHandler eventHandler = eventHandlers.get(event.type());
+                if (eventHandler != null && filter.test(event.type(), event.tags()) && eventHandler.matches(event.tags())) {
+                    handledEvents += batcher.handle(eventHandler, event.payload(), event.position().value() >= countedFrom);
+                    onCountedEventsHandled(batcher);
+                }
+                if (outermost && batcher.isEmpty()) {
+                    lastProcessedPosition = nextPosition - 1;
+                }
+            }
+            handledEvents += batcher.flush();
+            onCountedEventsHandled(batcher);
+            if (outermost) {
+                lastProcessedPosition = nextPosition - 1;
+            }
+            if (checkpointer != null && outermost) {
+                checkpointer.onEventsDelivered(handledEvents);
+            }
+        }
+    }
+
+    int getLastProcessedPosition() {
+        return lastProcessedPosition;
+    }
+
+    /**
+     * Moves the cursor of an idle sequence past the events appended since, none of which it accepts. Without this, a
+     * partition that receives no events would keep its last processed position, and hold back the checkpoint of its
+     * event handler. Appended events are counted as pending before they are published, so with nothing pending or
+     * requested, all published events that the sequence accepts are handled already. The history before the counting
+     * boundary must be caught up on first.
+     */
+    void skipIfIdle() {
+        int publishedPosition = eventStore.getPublishedPosition(); // read before checking for pending events
+        if (lock.isHeldByCurrentThread() || !lock.tryLock()) {
+            return; // delivering, not idle
+        }
+        try {
+            if (nextPosition <= publishedPosition && nextPosition >= countedFrom && pendingEvents.get() == 0
+                    && requestedPosition.get() < nextPosition) {
+                nextPosition = publishedPosition + 1;
+                lastProcessedPosition = publishedPosition;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void onCountedEventsHandled(Batcher batcher) {
+        int handledEvents = batcher.takeHandledCountedEvents();
+        if (handledEvents == 0) {
+            return;
+        }
+        pendingBatchEvents.addAndGet(-batcher.takeHandledCountedBatchEvents());
+        pendingEvents.addAndGet(-handledEvents);
+        if (blockedAppenders.get() > 0) {
+            capacityLock.lock();
+            try {
+                capacityAvailable.signalAll();
+            } finally {
+                capacityLock.unlock();
+            }
+        }
+    }
+
+    EventHandlerMetrics getMetrics() {
+        int queueDepth = pendingEvents.get();
+        boolean upToDate = queueDepth == 0 && requestedPosition.get() < nextPosition; // skipped events don't count as lag
+        int lag = upToDate ? 0 : Math.max(0, eventStore.getPublishedPosition() - nextPosition + 1);
+        return new EventHandlerMetrics(name, partition, lag, queueDepth);
+    }
+
+    /**
+     * Schedules a replay on the lane of this sequence, see {@link #replay(Query, SequencePosition, SequencePosition,
+     * List, AtomicBoolean)}.
+     *
+     * @return Completes when the replay has finished, exceptionally if it failed or was cancelled
+     */
+    CompletableFuture<Void> scheduleReplay(Query replayQuery, SequencePosition from, SequencePosition to,
+                                           List<EventHandlerSequence> pausedSequences, AtomicBoolean cancelled) {
+        return CompletableFuture.runAsync(() -> replay(replayQuery, from, to, pausedSequences, cancelled), lane);
+    }
+
+    /**
+     * Resets the handler and replays the events of the replay query to its replayable event handlers, regardless of
+     * partition. Live delivery is paused while replaying, and continues from the live cursor afterwards. The events are
+     * read once live delivery is paused, up to the cursor of the partition they belong to: later events are delivered
+     * live after the replay, so every event is handled exactly once.
+     * <p>
+     * The replay stops at the first exception of a reset handler or event handler method, and rethrows it. Between
+     * events, it stops with a {@link CancellationException} once cancelled or interrupted. A stopped replay leaves the
+     * handler partially replayed, until it is replayed again.
+     *
+     * @param from            Start position, inclusive
+     * @param to              End position, exclusive, or null to replay up to the cursors
+     * @param pausedSequences Sequences of the other partitions of the same event handler, which are paused while
+     *                        replaying
+     * @param cancelled       Set to cancel the replay
+     */
+    void replay(Query replayQuery, SequencePosition from, SequencePosition to, List<EventHandlerSequence> pausedSequences,
+                AtomicBoolean cancelled) {
+        pausedSequences.forEach(sequence -> sequence.lock.lock());
+        lock.lock();
+        boolean wasDelivering = delivering.get();
+        delivering.set(true);
+        try {
+            resetHandlers.forEach(Runnable::run);
+            Batcher batcher = new Batcher(options.maxBatchSize());
+            for (SequencedEvent event : readDeliveredEvents(replayQuery, from, to, pausedSequences)) {
+                checkNotCancelled(cancelled);
+                InvocableFilteringEventHandler eventHandler = replayableEventHandlers.get(event.type());
+                if (eventHandler != null && eventHandler.matches(event.tags())) {
+                    batcher.handle(eventHandler, event.payload(), false); // replayed events are not pending
+                }
+            }
+            batcher.flush();
+        } finally {
+            delivering.set(wasDelivering);
+            lock.unlock();
+            pausedSequences.forEach(sequence -> sequence.lock.unlock());
+        }
+        resumeDelivery();
+        pausedSequences.forEach(EventHandlerSequence::resumeDelivery);
+    }
+
+    /**
+     * @return The events of the replay query before the cursor of the partition they belong to, which are the events
+     * that were delivered live (or skipped) already. Must be called while holding the locks of all partitions.
+     */
+    private List<SequencedEvent> readDeliveredEvents(Query replayQuery, SequencePosition from, SequencePosition to,
+                                                     List<EventHandlerSequence> otherPartitions) {
+        List<EventHandlerSequence> partitions = new ArrayList<>(otherPartitions);
+        partitions.addFirst(this);
+        int end = partitions.stream().mapToInt(partition -> partition.nextPosition).max().orElseThrow();
+        if (to != null) {
+            end = Math.min(end, to.value());
+        }
+        if (replayQuery.getQueryItems().isEmpty() || from.value() >= end) {
+            return List.of();
+        }
+        return eventStore.read(replayQuery, ReadOptions.builder()
+                        .withStartingPosition(from)
+                        .withStoppingPosition(end)
+                        .build()).stream()
+                .filter(event -> partitions.stream()
+                        .filter(partition -> partition.accepts(event.type(), event.tags()))
+                        .findFirst()
+                        .map(partition -> event.position().value() < partition.nextPosition)
+                        .orElse(false))
+                .toList();
+    }
+
+    /**
+     * Delivers events that were requested while the replay held the sequence; a delivery that could not take over the
+     * sequence leaves them for the next append otherwise.
+     */
+    private void resumeDelivery() {
+        if (lane != null && requestedPosition.get() >= nextPosition) {
+            scheduleDeliveryUpTo(requestedPosition.get());
+        }
+    }
+
+    private void checkNotCancelled(AtomicBoolean cancelled) {
+        if (Thread.interrupted()) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException("Replay of %s was interrupted.".formatted(name));
+        }
+        if (cancelled.get()) {
+            throw new CancellationException("Replay of %s was cancelled.".formatted(name));
+        }
+    }
+
+    /**
+     * Collects consecutive events for the same batching event handler method. Any other invocation flushes the batch
+     * first, so events are handled in log order. No batch is pending while an event handler method runs, so nested
+     * deliveries start with an empty batch.
+     */
+    private static class Batcher {
+
+        private final int maxBatchSize;
+        private InvocableFilteringEventHandler batchEventHandler;
+        private List<Object> batch;
+        private int countedEventsInBatch;
+        private int handledCountedEvents;
+        private int handledCountedBatchEvents;
+
+        private Batcher(int maxBatchSize) {
+            this.maxBatchSize = maxBatchSize;
+        }
+
+        /**
+         * @param counted Whether the event is counted as pending, see {@link #takeHandledCountedEvents()}
+         * @return The number of events handled, which excludes the events collected in the batch
+         */
+        int handle(InvocableFilteringEventHandler eventHandler, Object event, boolean counted) {
+            int handledEvents = eventHandler == batchEventHandler ? 0 : flush();
+            if (!eventHandler.batching()) {
+                eventHandler.invoke(event);
+                if (counted) {
+                    handledCountedEvents++;
+                }
+                return handledEvents + 1;
+            }
+            if (batch == null) {
+                batch = new ArrayList<>();
+                batchEventHandler = eventHandler;
+            }
+            batch.add(event);
+            if (counted) {
+                countedEventsInBatch++;
+            }
+            return batch.size() >= maxBatchSize ? handledEvents + flush() : handledEvents;
+        }
+
+        /**
+         * @return The number of events handled
+         */
+        int flush() {
+            if (batch == null) {
+                return 0;
+            }
+            List<Object> events = batch;
+            InvocableFilteringEventHandler eventHandler = batchEventHandler;
+            int countedEvents = countedEventsInBatch;
+            batch = null;
+            batchEventHandler = null;
+            countedEventsInBatch = 0;
+            eventHandler.invoke(events);
+            handledCountedEvents += countedEvents;
+            handledCountedBatchEvents += countedEvents;
+            return events.size();
+        }
+
+        /**
+         * @return The number of handled events that were counted as pending, since the previous call
+         */
+        int takeHandledCountedEvents() {
+            int countedEvents = handledCountedEvents;
+            handledCountedEvents = 0;
+            return countedEvents;
+        }
+
+        /**
+         * @return The number of handled events that were counted as pending and were handled in a batch, since the
+         * previous call
+         */
+        int takeHandledCountedBatchEvents() {
+            int countedEvents = handledCountedBatchEvents;
+            handledCountedBatchEvents = 0;
+            return countedEvents;
+        }
+
+        boolean isEmpty() {
+            return batch == null;
+        }
+    }
+
+}
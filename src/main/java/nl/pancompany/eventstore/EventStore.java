@@ -12,7 +12,8 @@ import nl.pancompany.eventstore.data.*;
 import java.time.Clock;
 import java.time.Instant;
 import java.util.*;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.function.Predicate;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
@@ -28,20 +29,33 @@ public class EventStore implements AutoCloseable {
     private final Map<Tag, Set<SequencePosition>> tagPositions = new HashMap<>();
     private final Map<Type, Set<SequencePosition>> typePositions = new HashMap<>();
     private final List<SequencePosition> allSequencePositions = new ArrayList<>();
+    private final List<Instant> timestamps = new ArrayList<>(); // append time of each position, never decreasing
     private final ReadWriteLock lock = new ReentrantReadWriteLock();
     private final Lock readLock = lock.readLock();
     private final Lock writeLock = lock.writeLock();
     @Getter
-    private final EventBus eventBus = new EventBus(this);
-    private final Queue<SequencedEvent> addedEvents = new ConcurrentLinkedQueue<>();
+    private final EventBus eventBus;
     private final Clock clock;
+    private volatile int publishedPosition = -1; // log cursor: all events up to this position are stored and indexed
+    private volatile StateCache stateCache; // null unless enabled
+    private volatile QueryResultCache queryResultCache; // null unless enabled
 
     public EventStore() {
-        this.clock = Clock.systemDefaultZone();
+        this(Clock.systemDefaultZone());
     }
 
     public EventStore(Clock clock) {
         this.clock = clock;
+        this.eventBus = new EventBus(this);
+    }
+
+    /**
+     * @param asynchronousEventHandlerThreadFactory Creates the threads that asynchronous event handlers run on, one per
+     *                                              event handler. Defaults to virtual threads.
+     */
+    public EventStore(Clock clock, ThreadFactory asynchronousEventHandlerThreadFactory) {
+        this.clock = clock;
+        this.eventBus = new EventBus(this, requireNonNull(asynchronousEventHandlerThreadFactory));
     }
 
     @SuppressWarnings("unchecked")
@@ -53,11 +67,72 @@ public class EventStore implements AutoCloseable {
     }
 
     public <T> StateManager<T> loadState(Class<T> stateClass, Query query) {
-        var stateManager = new StateManager<>(this, stateClass, query);
+        var stateManager = new StateManager<>(this, stateClass, query, null, stateCache);
         stateManager.load();
         return stateManager;
     }
 
+    /**
+     * Loads the state from the latest snapshot, if any, and sources only the events after it. A new snapshot is stored
+     * in the background once enough events were sourced after the latest snapshot. The snapshot takes the place of the
+     * empty state instance.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> StateManager<T> loadState(T emptyStateInstance, Query query, SnapshotOptions snapshotOptions) {
+        requireNonNull(emptyStateInstance);
+        requireNonNull(snapshotOptions);
+        var stateManager = new StateManager<>(this, (Class<T>) emptyStateInstance.getClass(), query, snapshotOptions, null);
+        stateManager.load(emptyStateInstance);
+        return stateManager;
+    }
+
+    /**
+     * Loads the state from the latest snapshot, if any, and sources only the events after it. A new snapshot is stored
+     * in the background once enough events were sourced after the latest snapshot.
+     */
+    public <T> StateManager<T> loadState(Class<T> stateClass, Query query, SnapshotOptions snapshotOptions) {
+        requireNonNull(snapshotOptions);
+        var stateManager = new StateManager<>(this, stateClass, query, snapshotOptions, stateCache);
+        stateManager.load();
+        return stateManager;
+    }
+
+    /**
+     * @return A new command context, to decide on several states and append the resulting events at once
+     */
+    public CommandContext createCommandContext() {
+        return new CommandContext(this);
+    }
+
+    /**
+     * Caches the states loaded by state class, see {@link #loadState(Class, Query)}, for up to the given number of
+     * state class and query combinations, evicting the least recently loaded state first. Loading a cached state only
+     * sources the events that were appended after it was last loaded. Every load returns its own copy of the cached
+     * state, made with Java serialization, so only states of {@link java.io.Serializable} state classes are cached.
+     * Replaces the current cache, if any.
+     */
+    public void enableStateCache(int maximumSize) {
+        stateCache = new StateCache(maximumSize);
+    }
+
+    /**
+     * Caches the results of reading queries without read options, see {@link #read(Query)}, for up to the given
+     * number of queries, evicting the least recently read result first. Reading a cached query only evaluates it for
+     * the events appended since it was last read. Queries for all events are not cached. Replaces the current cache,
+     * if any.
+     */
+    public void enableQueryResultCache(int maximumSize) {
+        queryResultCache = new QueryResultCache(maximumSize);
+    }
+
+    /**
+     * @return The metrics of the query result cache, if enabled
+     */
+    public Optional<QueryResultCacheMetrics> getQueryResultCacheMetrics() {
+        QueryResultCache cache = queryResultCache;
+        return cache == null ? Optional.empty() : Optional.of(cache.getMetrics());
+    }
+
     /**
      * Contract: event payload must always be immutable to guarantee immutability of events in the event store
      *
@@ -107,6 +182,9 @@ public class EventStore implements AutoCloseable {
         requireNonNull(events); // empty list is however allowed
         events.forEach(e -> requireNonNull(requireNonNull(e).payload()));
         SequencePosition lastInsertPosition = null;
+        List<SequencedEvent> appendedEvents = new ArrayList<>(events.size());
+        EventBus.Dispatch dispatch;
+        eventBus.checkCapacity(events);
         try {
             writeLock.lock();
             if (appendCondition != null) {
@@ -114,33 +192,37 @@ public class EventStore implements AutoCloseable {
             }
             for (Event event : events) {
                 lastInsertPosition = SequencePosition.of(storedEvents.size());
-                Metadata metadata = Metadata.of("timestamp", Instant.now(clock).toString());
+                Instant timestamp = Instant.now(clock);
+                if (!timestamps.isEmpty() && timestamp.isBefore(timestamps.getLast())) {
+                    timestamp = timestamps.getLast(); // clock went back, keep the time index sorted
+                }
+                timestamps.add(timestamp);
+                Metadata metadata = Metadata.of("timestamp", timestamp.toString());
                 SequencedEvent storedEvent = new SequencedEvent(event, lastInsertPosition, metadata);
                 storedEvents.add(storedEvent);
-                addedEvents.offer(storedEvent); // offer() and writeLock guarantee sequential filling of queue
+                appendedEvents.add(storedEvent);
                 allSequencePositions.add(lastInsertPosition);
                 for (Tag tag : event.tags()) {
                     tagPositions.computeIfAbsent(tag, k -> new HashSet<>()).add(lastInsertPosition); // add to tag-index
                 }
                 typePositions.computeIfAbsent(event.type(), k -> new HashSet<>()).add(lastInsertPosition); // add to type-index
             }
+            dispatch = eventBus.prepareDispatch(appendedEvents); // count pending events before any handler can see them
+            if (lastInsertPosition != null) {
+                publishedPosition = lastInsertPosition.value(); // publish only after the whole batch is indexed
+            }
         } finally {
             writeLock.unlock();
         }
-        synchronized (eventBus) { // poll() & synchronized guarantee sequential in-order processing of queue elements
-            while (!addedEvents.isEmpty()) {
-                eventBus.invokeAllEventHandlers(addedEvents.poll());
-            }
-        }
+        eventBus.dispatch(dispatch); // each handler delivers from its own cursor, in log order
         return Optional.ofNullable(lastInsertPosition);
     }
 
     private void checkWhetherAppendConditionFails(List<Event> events, AppendCondition appendCondition) throws AppendConditionNotSatisfied {
-        List<SequencedEvent> queryResult = queryEvents(
-                appendCondition.failIfEventsMatch(),
-                appendCondition.after() == null ? null : ReadOptions.builder()
-                        .withStartingPosition(appendCondition.after().incrementAndGet().value()).build());
-        if (!queryResult.isEmpty()) {
+        ReadOptions options = appendCondition.after() == null ? null : ReadOptions.builder()
+                .withStartingPosition(appendCondition.after().incrementAndGet().value()).build();
+        if (anyMatch(appendCondition.failIfEventsMatch(), options)) {
+            List<SequencedEvent> queryResult = queryEvents(appendCondition.failIfEventsMatch(), options); // for the message
             if (appendCondition.after() == null) {
                 throw new AppendConditionNotSatisfied(
                         """
@@ -171,6 +253,49 @@ public class EventStore implements AutoCloseable {
         }
     }
 
+    /**
+     * Runs the action while no events can be appended.
+     */
+    void runExclusively(Runnable action) {
+        try {
+            writeLock.lock();
+            action.run();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * @return The position of the last event that was fully appended, or -1 if the event store is empty
+     */
+    int getPublishedPosition() {
+        return publishedPosition;
+    }
+
+    /**
+     * @return A read-only view of the event store as it is now, which keeps returning the same results while events are
+     * appended
+     */
+    public ReadView readView() {
+        return new ReadView(this, publishedPosition);
+    }
+
+    /**
+     * Reads a range of the event log, without any filtering.
+     *
+     * @param start start position, inclusive
+     * @param stop  stop position, exclusive, capped at the end of the log
+     */
+    List<SequencedEvent> readRange(int start, int stop) {
+        try {
+            readLock.lock();
+            int end = Math.min(stop, storedEvents.size());
+            return start >= end ? List.of() : new ArrayList<>(storedEvents.subList(start, end));
+        } finally {
+            readLock.unlock();
+        }
+    }
+
     public List<SequencedEvent> read(Query query) {
         requireNonNull(query);
         return read(query, null);
@@ -180,41 +305,290 @@ public class EventStore implements AutoCloseable {
         requireNonNull(query);
         try {
             readLock.lock();
+            QueryResultCache cache = queryResultCache;
+            if (cache != null && options == null && !query.isAll()) {
+                return queryCachedEvents(query, cache);
+            }
             return queryEvents(query, options);
         } finally {
             readLock.unlock();
         }
     }
 
+    public int count(Query query) {
+        return count(query, null);
+    }
+
+    /**
+     * Counts the events matching the query on the indexes, without reading the events.
+     */
+    public int count(Query query, ReadOptions options) {
+        requireNonNull(query);
+        try {
+            readLock.lock();
+            int start = getStartPosition(options);
+            int stop = getStopPosition(options);
+            if (query.isAll()) {
+                return Math.max(stop - start, 0);
+            }
+            if (query.getQueryItems().size() == 1) {
+                int[] count = new int[1];
+                forEachMatch(query.getQueryItems().iterator().next(), start, stop, position -> {
+                    count[0]++;
+                    return true;
+                });
+                return count[0];
+            }
+            Set<SequencePosition> matches = new HashSet<>(); // an event can match several query items
+            for (QueryItem queryItem : query.getQueryItems()) {
+                forEachMatch(queryItem, start, stop, position -> {
+                    matches.add(position);
+                    return true;
+                });
+            }
+            return matches.size();
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    public boolean exists(Query query) {
+        return exists(query, null);
+    }
+
+    /**
+     * Checks on the indexes whether any event matches the query, without reading the events, and stops at the first
+     * match.
+     */
+    public boolean exists(Query query, ReadOptions options) {
+        requireNonNull(query);
+        try {
+            readLock.lock();
+            return anyMatch(query, options);
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    private boolean anyMatch(Query query, ReadOptions options) {
+        int start = getStartPosition(options);
+        int stop = getStopPosition(options);
+        if (query.isAll()) {
+            return start < stop;
+        }
+        for (QueryItem queryItem : query.getQueryItems()) {
+            if (!forEachMatch(queryItem, start, stop, position -> false)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Visits the positions in [start, stop) of the events matching the query item, which must not match all events.
+     * Only the smallest posting list of the tags is walked, or the posting lists of the types if the item has no tags,
+     * unless the range itself is smaller; each candidate is checked against the event itself.
+     *
+     * @param visitor Returns whether to continue visiting
+     * @return Whether all matches were visited
+     */
+    private boolean forEachMatch(QueryItem queryItem, int start, int stop, Predicate<SequencePosition> visitor) {
+        List<Set<SequencePosition>> candidates = new ArrayList<>();
+        if (!queryItem.isAllTags()) {
+            Set<SequencePosition> smallest = null;
+            for (Tag tag : queryItem.tags()) {
+                Set<SequencePosition> positions = tagPositions.get(tag);
+                if (positions == null) {
+                    return true; // no event has this tag
+                }
+                if (smallest == null || positions.size() < smallest.size()) {
+                    smallest = positions;
+                }
+            }
+            candidates.add(smallest);
+        } else {
+            for (Type type : queryItem.types()) { // each event has a single type, so the posting lists are disjoint
+                Set<SequencePosition> positions = typePositions.get(type);
+                if (positions != null) {
+                    candidates.add(positions);
+                }
+            }
+        }
+        if (stop - start <= candidates.stream().mapToInt(Set::size).sum()) {
+            for (int position = start; position < stop; position++) {
+                if (matches(queryItem, storedEvents.get(position)) && !visitor.test(allSequencePositions.get(position))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        for (Set<SequencePosition> positions : candidates) {
+            for (SequencePosition position : positions) {
+                if (position.value() >= start && position.value() < stop && matches(queryItem, storedEvents.get(position.value()))
+                        && !visitor.test(position)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private static boolean matches(QueryItem queryItem, SequencedEvent event) {
+        return event.tags().containsAll(queryItem.tags())
+                && (queryItem.isAllTypes() || queryItem.types().contains(event.type()));
+    }
+
+    private int getStartPosition(ReadOptions options) {
+        if (options == null) {
+            return 0;
+        }
+        int start = options.startingPosition().value();
+        return options.from() == null ? start : Math.max(start, getFirstPositionAtOrAfter(options.from()));
+    }
+
+    private int getStopPosition(ReadOptions options) {
+        if (options == null) {
+            return storedEvents.size();
+        }
+        int stop = options.stopPosition() == null ?
+                storedEvents.size() : Math.min(options.stopPosition().value(), storedEvents.size());
+        return options.to() == null ? stop : Math.min(stop, getFirstPositionAtOrAfter(options.to()));
+    }
+
+    /**
+     * Binary search on the append times, which never decrease with the position.
+     *
+     * @return The first position appended at or after the given time, or the next position if there is none
+     */
+    private int getFirstPositionAtOrAfter(Instant time) {
+        int low = 0;
+        int high = timestamps.size();
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (timestamps.get(middle).isBefore(time)) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Reads the events of several queries, for instance of all decision models of a command, under a single read lock.
+     * All results are therefore consistent with each other, and query items that several queries share are only
+     * evaluated once.
+     *
+     * @return The events of each query, and an append condition that fails if an event matching any of the queries is
+     * appended after the last event that was read
+     */
+    public ReadResults readAll(List<Query> queries) {
+        return readAll(queries, null);
+    }
+
+    ReadResults readAll(List<Query> queries, ReadOptions options) {
+        requireNonNull(queries);
+        if (queries.isEmpty()) {
+            throw new IllegalArgumentException("At least one query must be given.");
+        }
+        queries.forEach(Objects::requireNonNull);
+        List<List<SequencedEvent>> events = new ArrayList<>(queries.size());
+        SequencePosition lastReadPosition = null;
+        try {
+            readLock.lock();
+            Set<SequencePosition> sequencePositionsFromSelection = getSelectedSequencePositions(options);
+            Map<QueryItem, Set<SequencePosition>> queryItemPositions = new HashMap<>();
+            for (Query query : queries) {
+                List<SequencedEvent> queryResult = queryEvents(query, sequencePositionsFromSelection, queryItemPositions);
+                if (!queryResult.isEmpty() && (lastReadPosition == null
+                        || queryResult.getLast().position().compareTo(lastReadPosition) > 0)) {
+                    lastReadPosition = queryResult.getLast().position();
+                }
+                events.add(queryResult);
+            }
+        } finally {
+            readLock.unlock();
+        }
+        Query combinedQuery = Query.or(queries.stream()
+                .flatMap(query -> query.getQueryItems().stream())
+                .distinct()
+                .toArray(QueryItem[]::new));
+        return new ReadResults(List.copyOf(events), AppendCondition.builder()
+                .failIfEventsMatch(combinedQuery)
+                .after(lastReadPosition)
+                .build());
+    }
+
+    /**
+     * Reads a query from the cache, evaluating it only for the events appended after the cached result.
+     */
+    private List<SequencedEvent> queryCachedEvents(Query query, QueryResultCache cache) {
+        int lastPosition = storedEvents.size() - 1;
+        Optional<QueryResultCache.CachedResult> cachedResult = cache.get(query);
+        List<SequencedEvent> events;
+        if (cachedResult.isEmpty()) {
+            events = queryEvents(query, null);
+        } else if (cachedResult.get().validUpTo() == lastPosition) {
+            return cachedResult.get().events();
+        } else {
+            List<SequencedEvent> appendedEvents = queryEvents(query, ReadOptions.builder()
+                    .withStartingPosition(cachedResult.get().validUpTo() + 1)
+                    .build());
+            events = new ArrayList<>(cachedResult.get().events().size() + appendedEvents.size());
+            events.addAll(cachedResult.get().events());
+            events.addAll(appendedEvents);
+            events = Collections.unmodifiableList(events);
+        }
+        cache.put(query, events, lastPosition);
+        return events;
+    }
+
     private List<SequencedEvent> queryEvents(Query query, ReadOptions options) {
-        Set<SequencePosition> sequencePositionsFromSelection = getSelectedSequencePositions(options);
+        return queryEvents(query, getSelectedSequencePositions(options), new HashMap<>());
+    }
+
+    /**
+     * @param queryItemPositions Positions of the query items evaluated before, within the same read lock
+     */
+    private List<SequencedEvent> queryEvents(Query query, Set<SequencePosition> sequencePositionsFromSelection,
+                                             Map<QueryItem, Set<SequencePosition>> queryItemPositions) {
         Set<SequencePosition> querySequencePositions = new HashSet<>();
         for (QueryItem queryItem : query.getQueryItems()) {
             if (queryItem.isAll()) {
                 return sequencePositionsToEvents(sequencePositionsFromSelection); // just map base set to events
             }
-            Set<SequencePosition> queryItemSequencePositions = new HashSet<>(sequencePositionsFromSelection); // mutable base-set of positions
-            if (!queryItem.isAllTags()) { // if all, then retain base-set, otherwise:
-                for (Tag tag : queryItem.tags()) { // step-wise intersection with the set of positions for each query tag (AND)
-                    queryItemSequencePositions.retainAll(tagPositions.computeIfAbsent(tag, t -> new HashSet<>()));
-                }
+            querySequencePositions.addAll(queryItemPositions.computeIfAbsent(queryItem,
+                    item -> getQueryItemPositions(item, sequencePositionsFromSelection))); // union of all sets of positions for all query items (OR)
+        }
+        return sequencePositionsToEvents(querySequencePositions);
+    }
+
+    private Set<SequencePosition> getQueryItemPositions(QueryItem queryItem, Set<SequencePosition> sequencePositionsFromSelection) {
+        Set<SequencePosition> queryItemSequencePositions = new HashSet<>(sequencePositionsFromSelection); // mutable base-set of positions
+        if (!queryItem.isAllTags()) { // if all, then retain base-set, otherwise:
+            for (Tag tag : queryItem.tags()) { // step-wise intersection with the set of positions for each query tag (AND)
+                queryItemSequencePositions.retainAll(tagPositions.computeIfAbsent(tag, t -> new HashSet<>()));
             }
-            if (!queryItem.isAllTypes()) { // if all, no second intersection, otherwise:
-                Set<SequencePosition> queryItemTypePositions = new HashSet<>();
-                for (Type type : queryItem.types()) { // step-wise union of the position sets of all query event types (OR)
-                    queryItemTypePositions.addAll(typePositions.computeIfAbsent(type, t -> new HashSet<>()));
-                }
-                queryItemSequencePositions.retainAll(queryItemTypePositions); // intersection with the set of positions of all query event types (AND)
+        }
+        if (!queryItem.isAllTypes()) { // if all, no second intersection, otherwise:
+            Set<SequencePosition> queryItemTypePositions = new HashSet<>();
+            for (Type type : queryItem.types()) { // step-wise union of the position sets of all query event types (OR)
+                queryItemTypePositions.addAll(typePositions.computeIfAbsent(type, t -> new HashSet<>()));
             }
-            querySequencePositions.addAll(queryItemSequencePositions); // union of all sets of positions for all query items (OR)
+            queryItemSequencePositions.retainAll(queryItemTypePositions); // intersection with the set of positions of all query event types (AND)
         }
-        return sequencePositionsToEvents(querySequencePositions);
+        return queryItemSequencePositions;
     }
 
     private Set<SequencePosition> getSelectedSequencePositions(ReadOptions options) {
         Set<SequencePosition> sequencePositionsFromSelection;
         if (options == null) {
             sequencePositionsFromSelection = new HashSet<>(allSequencePositions);
+        } else if (options.hasTimeRange()) {
+            int start = getStartPosition(options);
+            int stop = getStopPosition(options);
+            sequencePositionsFromSelection = start >= stop ? new HashSet<>() :
+                    new HashSet<>(allSequencePositions.subList(start, stop));
         } else {
             sequencePositionsFromSelection = new HashSet<>(allSequencePositions.subList(
                     options.startingPosition().value(),
@@ -6,16 +6,12 @@ import nl.pancompany.eventstore.query.Type;
 import nl.pancompany.eventstore.data.Event;
 import nl.pancompany.eventstore.data.SequencedEvent;
 
-import java.lang.annotation.Annotation;
-import java.lang.reflect.Constructor;
-import java.lang.reflect.InvocationTargetException;
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 import static java.util.Collections.emptyList;
-import static java.util.function.Function.identity;
 import static nl.pancompany.eventstore.State.uninitializedState;
-import static nl.pancompany.eventstore.query.Type.getTypeForAnnotatedParameter;
 
 class InitialStateCreator<T> {
 
@@ -26,64 +22,39 @@ class InitialStateCreator<T> {
     }
 
     State<T> createState(List<SequencedEvent> events) {
-        Map<Type, Constructor<T>> stateConstructors = getStateConstructors();
+        Map<Type, Function<Object, Object>> stateConstructors = getStateConstructors();
         if (stateConstructors.isEmpty()) {
             return createEmptyState(events);
         }
         return createState(stateConstructors, events);
     }
 
-    @SuppressWarnings("unchecked")
-    private Map<Type, Constructor<T>> getStateConstructors() {
-        Set<Constructor<T>> stateClassConstructors = Arrays.stream(stateClass.getDeclaredConstructors())
-                .map(constructor -> ((Constructor<T>) constructor))
-                .filter(constructor -> constructor.isAnnotationPresent(StateCreator.class))
-                .collect(Collectors.toSet());
-        Set<Constructor<T>> validStateClassConstructors = stateClassConstructors.stream()
-                .filter(constructor -> constructor.getParameterCount() == 1)
-                .collect(Collectors.toSet());
-        if (validStateClassConstructors.size() != stateClassConstructors.size()) {
-            throw new IllegalArgumentException("State Constructors with multiple parameters are not allowed.");
-        }
-        validStateClassConstructors.forEach(constructor -> constructor.setAccessible(true));
-        return stateClassConstructors.stream().collect(Collectors.toMap(
-                this::getEventType,
-                identity()
-        ));
-    }
-
-    private Type getEventType(Constructor<?> stateConstructor) {
-        Class<?> declaredParameterType = stateConstructor.getParameters()[0].getType();
-        Annotation annotation = stateConstructor.getAnnotation(StateCreator.class);
-        return getTypeForAnnotatedParameter(annotation, declaredParameterType);
+    private Map<Type, Function<Object, Object>> getStateConstructors() {
+        return StateMetadata.getStateConstructors(stateClass);
     }
 
-    @SuppressWarnings("unchecked")
     private State<T> createEmptyState(List<SequencedEvent> events) {
-        Constructor<T> noArgConstructor = (Constructor<T>) Arrays.stream(stateClass.getDeclaredConstructors())
-                .filter(constructor -> constructor.getParameterCount() == 0)
-                .findFirst()
+        Supplier<Object> noArgsConstructor = StateMetadata.getNoArgsConstructor(stateClass)
                 .orElseThrow(() -> new IllegalArgumentException(String.format("State class must have a no-args " +
                         "constructor or an @%s annotated constructor.", StateCreator.class.getSimpleName())));
-        noArgConstructor.setAccessible(true);
-        return new State<>(invoke(noArgConstructor), events, events);
+        return new State<>(invoke(noArgsConstructor), events, events);
     }
 
-    private T invoke(Constructor<T> constructor) {
+    private T invoke(Supplier<Object> noArgsConstructor) {
         try {
-            return constructor.newInstance();
-        } catch (InstantiationException | InvocationTargetException | IllegalAccessException e) {
+            return stateClass.cast(noArgsConstructor.get());
+        } catch (Exception e) {
             throw new StateConstructionFailedException(e);
         }
     }
 
-    private State<T> createState(Map<Type, Constructor<T>> stateConstructors, List<SequencedEvent> events) {
+    private State<T> createState(Map<Type, Function<Object, Object>> stateConstructors, List<SequencedEvent> events) {
         if (events.isEmpty()) {
             return uninitializedState(stateClass);
         }
         SequencedEvent firstEvent = events.getFirst();
         List<SequencedEvent> unprocessedEvents = events.subList(1, events.size());
-        Constructor<T> constructor = stateConstructors.get(firstEvent.type());
+        Function<Object, Object> constructor = stateConstructors.get(firstEvent.type());
         if (constructor == null) {
             throw new StateConstructionFailedException(String.format("No state constructor found for event type %s.", firstEvent.type()));
         }
@@ -95,18 +66,18 @@ class InitialStateCreator<T> {
     }
 
     State<T> createState(Event firstEvent) {
-        Map<Type, Constructor<T>> stateConstructors = getStateConstructors();
-        Constructor<T> constructor = stateConstructors.get(firstEvent.type());
+        Map<Type, Function<Object, Object>> stateConstructors = getStateConstructors();
+        Function<Object, Object> constructor = stateConstructors.get(firstEvent.type());
         if (constructor == null) {
             throw new StateConstructionFailedException(String.format("No state constructor found for event type %s.", firstEvent.type()));
         }
         return new State<>(invoke(constructor, firstEvent.payload()), emptyList(), emptyList());
     }
 
-    private T invoke(Constructor<T> constructor, Object eventPayload) {
+    private T invoke(Function<Object, Object> constructor, Object eventPayload) {
         try {
-            return constructor.newInstance(eventPayload);
-        } catch (InstantiationException | InvocationTargetException | IllegalAccessException e) {
+            return stateClass.cast(constructor.apply(eventPayload));
+        } catch (Exception e) {
             throw new StateConstructionFailedException(e);
         }
     }
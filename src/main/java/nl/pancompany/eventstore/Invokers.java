@@ -0,0 +1,131 @@
+package nl.pancompany.eventstore;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaConversionException;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandleProxies;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodHandles.Lookup;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Executable;
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Compiles annotated methods and constructors into strongly typed functional interfaces using
+ * {@link LambdaMetafactory}. The generated classes call the member directly, so invocations skip the access checks and
+ * argument arrays of {@link Method#invoke}, and can be inlined. Invokers are generated once per member and cached with
+ * the declaring class.
+ * <p>
+ * If the declaring class does not allow private access (e.g. a named module that does not open its package), or is a
+ * hidden class, which generated classes cannot refer to, a method handle proxy is used instead. Exceptions thrown by the
+ * member are not wrapped, checked exceptions included, except that a method handle proxy wraps checked exceptions in an
+ * {@link java.lang.reflect.UndeclaredThrowableException}.
+ */
+@Slf4j
+final class Invokers {
+
+    private static final ClassValue<Map<Executable, Object>> invokers = new ClassValue<>() {
+        @Override
+        protected Map<Executable, Object> computeValue(Class<?> declaringClass) {
+            return new ConcurrentHashMap<>();
+        }
+    };
+
+    private Invokers() {
+    }
+
+    /**
+     * @return Invoker of an instance method with one parameter, taking the instance and the argument
+     */
+    @SuppressWarnings("unchecked")
+    static BiConsumer<Object, Object> forMethod(Method method) {
+        return (BiConsumer<Object, Object>) getInvoker(method, BiConsumer.class, "accept",
+                MethodType.methodType(void.class, Object.class, Object.class));
+    }
+
+    /**
+     * @return Invoker of an instance method without parameters, taking the instance
+     */
+    @SuppressWarnings("unchecked")
+    static Consumer<Object> forNoArgsMethod(Method method) {
+        return (Consumer<Object>) getInvoker(method, Consumer.class, "accept",
+                MethodType.methodType(void.class, Object.class));
+    }
+
+    /**
+     * @return Invoker of a constructor with one parameter, taking the argument
+     */
+    @SuppressWarnings("unchecked")
+    static <T> Function<Object, T> forConstructor(Constructor<T> constructor) {
+        return (Function<Object, T>) getInvoker(constructor, Function.class, "apply",
+                MethodType.methodType(Object.class, Object.class));
+    }
+
+    /**
+     * @return Invoker of a constructor without parameters
+     */
+    @SuppressWarnings("unchecked")
+    static <T> Supplier<T> forNoArgsConstructor(Constructor<T> constructor) {
+        return (Supplier<T>) getInvoker(constructor, Supplier.class, "get", MethodType.methodType(Object.class));
+    }
+
+    private static Object getInvoker(Executable member, Class<?> functionalInterface, String interfaceMethodName,
+                                     MethodType interfaceMethodType) {
+        return invokers.get(member.getDeclaringClass()).computeIfAbsent(member,
+                m -> generateInvoker(m, functionalInterface, interfaceMethodName, interfaceMethodType));
+    }
+
+    private static Object generateInvoker(Executable member, Class<?> functionalInterface, String interfaceMethodName,
+                                          MethodType interfaceMethodType) {
+        if (member.getDeclaringClass().isHidden()) {
+            return generateProxy(member, functionalInterface, interfaceMethodType);
+        }
+        CallSite callSite;
+        try {
+            Lookup lookup = MethodHandles.privateLookupIn(member.getDeclaringClass(), MethodHandles.lookup());
+            MethodHandle implementation = unreflect(lookup, member);
+            callSite = LambdaMetafactory.metafactory(lookup,
+                    interfaceMethodName,
+                    MethodType.methodType(functionalInterface),
+                    interfaceMethodType,
+                    implementation,
+                    implementation.type());
+        } catch (IllegalAccessException | LambdaConversionException e) {
+            log.warn("Could not generate invoker of {}, falling back to a method handle proxy", member, e);
+            return generateProxy(member, functionalInterface, interfaceMethodType);
+        }
+        try {
+            return callSite.getTarget().invoke();
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new IllegalStateException("Cannot create invoker of %s".formatted(member), e);
+        }
+    }
+
+    private static Object generateProxy(Executable member, Class<?> functionalInterface, MethodType interfaceMethodType) {
+        try {
+            member.setAccessible(true);
+            MethodHandle implementation = unreflect(MethodHandles.lookup(), member).asType(interfaceMethodType);
+            return MethodHandleProxies.asInterfaceInstance(functionalInterface, implementation);
+        } catch (IllegalAccessException e) {
+            throw new IllegalArgumentException("Cannot access %s".formatted(member), e);
+        }
+    }
+
+    private static MethodHandle unreflect(Lookup lookup, Executable member) throws IllegalAccessException {
+        return member instanceof Method method ? lookup.unreflect(method) :
+                lookup.unreflectConstructor((Constructor<?>) member);
+    }
+
+}
@@ -0,0 +1,75 @@
+package nl.pancompany.eventstore;
+
+import nl.pancompany.eventstore.data.QueryResultCacheMetrics;
+import nl.pancompany.eventstore.data.SequencedEvent;
+import nl.pancompany.eventstore.query.Query;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Bounded cache of query results, keyed by query, evicting the least recently read result first.
+ * <p>
+ * Appended events never change, so a cached result never becomes wrong, it only misses the events appended after the
+ * position it is valid up to. Reads therefore only evaluate the query for those events and extend the result, and
+ * appends do not need to touch the cache at all.
+ */
+class QueryResultCache {
+
+    private final int maximumSize;
+    private final Map<Query, CachedResult> cachedResults;
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    QueryResultCache(int maximumSize) {
+        if (maximumSize < 1) {
+            throw new IllegalArgumentException("Query result cache size must be at least 1.");
+        }
+        this.maximumSize = maximumSize;
+        this.cachedResults = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Query, CachedResult> eldest) {
+                if (size() > QueryResultCache.this.maximumSize) {
+                    evictions++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    synchronized Optional<CachedResult> get(Query query) {
+        CachedResult cachedResult = cachedResults.get(query);
+        if (cachedResult == null) {
+            misses++;
+        } else {
+            hits++;
+        }
+        return Optional.ofNullable(cachedResult);
+    }
+
+    /**
+     * Caches the result of a query, unless a result that is valid up to a later position is cached already.
+     */
+    synchronized void put(Query query, List<SequencedEvent> events, int validUpTo) {
+        CachedResult cachedResult = cachedResults.get(query);
+        if (cachedResult == null || cachedResult.validUpTo() < validUpTo) {
+            cachedResults.put(query, new CachedResult(events, validUpTo));
+        }
+    }
+
+    synchronized QueryResultCacheMetrics getMetrics() {
+        return new QueryResultCacheMetrics(hits, misses, evictions, cachedResults.size());
+    }
+
+    /**
+     * @param events    The matching events, immutable
+     * @param validUpTo The last position the query was evaluated for, -1 for an empty event store
+     */
+    record CachedResult(List<SequencedEvent> events, int validUpTo) {
+    }
+
+}
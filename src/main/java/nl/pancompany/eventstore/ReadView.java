@@ -0,0 +1,71 @@
+package nl.pancompany.eventstore;
+
+import nl.pancompany.eventstore.data.ReadOptions;
+import nl.pancompany.eventstore.data.ReadResults;
+import nl.pancompany.eventstore.data.SequencePosition;
+import nl.pancompany.eventstore.data.SequencedEvent;
+import nl.pancompany.eventstore.query.Query;
+
+import java.util.List;
+import java.util.Optional;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * A read-only view of the event store, pinned at the last event that was appended when the view was created. Events
+ * are never changed once appended, so every read of the view returns the same result, however many events are
+ * appended in between. Creating a view is cheap: it only records the pinned position.
+ */
+public class ReadView {
+
+    private final EventStore eventStore;
+    private final int pinnedPosition; // -1 if the event store was empty
+
+    ReadView(EventStore eventStore, int pinnedPosition) {
+        this.eventStore = eventStore;
+        this.pinnedPosition = pinnedPosition;
+    }
+
+    /**
+     * @return The position of the last event in this view, if any
+     */
+    public Optional<SequencePosition> getLastSequencePosition() {
+        return pinnedPosition < 0 ? Optional.empty() : Optional.of(SequencePosition.of(pinnedPosition));
+    }
+
+    public List<SequencedEvent> read(Query query) {
+        requireNonNull(query);
+        return eventStore.read(query, pin(null));
+    }
+
+    /**
+     * @param options Read options, of which the stop position is capped at the end of this view
+     */
+    public List<SequencedEvent> read(Query query, ReadOptions options) {
+        requireNonNull(query);
+        return eventStore.read(query, pin(options));
+    }
+
+    /**
+     * See {@link EventStore#readAll(List)}. The append condition fails if an event matching any of the queries was
+     * appended after the last event that was read, which includes events appended after this view was created.
+     */
+    public ReadResults readAll(List<Query> queries) {
+        return eventStore.readAll(queries, pin(null));
+    }
+
+    private ReadOptions pin(ReadOptions options) {
+        int stop = pinnedPosition + 1;
+        if (options != null && options.stopPosition() != null) {
+            stop = Math.min(stop, options.stopPosition().value());
+        }
+        int start = options == null ? 0 : Math.min(options.startingPosition().value(), stop);
+        return ReadOptions.builder()
+                .withStartingPosition(start)
+                .withStoppingPosition(stop)
+                .withFrom(options == null ? null : options.from())
+                .withTo(options == null ? null : options.to())
+                .build();
+    }
+
+}
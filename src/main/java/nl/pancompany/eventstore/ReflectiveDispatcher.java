@@ -0,0 +1,169 @@
+package nl.pancompany.eventstore;
+
+import nl.pancompany.eventstore.annotation.EventHandler;
+import nl.pancompany.eventstore.annotation.EventSourced;
+import nl.pancompany.eventstore.annotation.ResetHandler;
+import nl.pancompany.eventstore.annotation.StateCreator;
+import nl.pancompany.eventstore.dispatch.Dispatcher;
+import nl.pancompany.eventstore.dispatch.EventHandlerDefinition;
+import nl.pancompany.eventstore.dispatch.EventSourcedDefinition;
+import nl.pancompany.eventstore.dispatch.StateCreatorDefinition;
+import nl.pancompany.eventstore.query.Tag;
+import nl.pancompany.eventstore.query.Type;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Executable;
+import java.lang.reflect.Method;
+import java.lang.reflect.ParameterizedType;
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+import static java.util.function.Function.identity;
+import static java.util.stream.Collectors.toSet;
+import static nl.pancompany.eventstore.query.Type.getTypeForAnnotatedParameter;
+
+/**
+ * Resolves the annotated members of a class through reflection, for classes without a generated {@link Dispatcher}.
+ * Members are invoked through {@link Invokers}.
+ */
+class ReflectiveDispatcher implements Dispatcher {
+
+    private final Class<?> clazz;
+
+    ReflectiveDispatcher(Class<?> clazz) {
+        this.clazz = clazz;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public Supplier<Object> noArgsConstructor() {
+        return Arrays.stream(clazz.getDeclaredConstructors())
+                .filter(constructor -> constructor.getParameterCount() == 0)
+                .findFirst()
+                .map(constructor -> Invokers.forNoArgsConstructor((Constructor<Object>) constructor))
+                .orElse(null);
+    }
+
+    @Override
+    public List<EventHandlerDefinition> eventHandlers() {
+        return getEventHandlerMethods(clazz).entrySet().stream()
+                .map(entry -> {
+                    EventHandler annotation = entry.getValue().getAnnotation(EventHandler.class);
+                    return new EventHandlerDefinition(entry.getKey(),
+                            Arrays.stream(annotation.requiredTags()).map(Tag::new).collect(toSet()),
+                            annotation.enableReplay(),
+                            annotation.partitionBy(),
+                            annotation.partitions(),
+                            isBatching(entry.getValue()),
+                            Invokers.forMethod(entry.getValue()));
+                })
+                .toList();
+    }
+
+    /**
+     * Recursively find all event handlers in the inheritance hierarchy, overwriting eventhandlers from superclasses
+     * with eventhandlers from subclasses for the same event type.
+     */
+    private static Map<Type, Method> getEventHandlerMethods(Class<?> clazz) {
+        if (clazz == null) {
+            return new HashMap<>(); // base case
+        }
+        Map<Type, Method> eventHandlerMethods = getEventHandlerMethods(clazz.getSuperclass());
+        eventHandlerMethods.putAll(getAnnotatedMethods(clazz, EventHandler.class).stream().collect(Collectors.toMap(
+                method -> isBatching(method) ? getBatchEventType(method, method.getAnnotation(EventHandler.class)) :
+                        getEventType(method, method.getAnnotation(EventHandler.class)),
+                identity()
+        )));
+        return eventHandlerMethods;
+    }
+
+    /**
+     * Recursively find all reset handlers in the inheritance hierarchy, at most one per class.
+     */
+    @Override
+    public List<Consumer<Object>> resetHandlers() {
+        List<Consumer<Object>> resetHandlers = new ArrayList<>();
+        for (Class<?> current = clazz; current != null; current = current.getSuperclass()) {
+            Set<Method> resetHandlerMethods = getAnnotatedMethods(current, ResetHandler.class);
+            if (resetHandlerMethods.size() > 1) {
+                throw new IllegalArgumentException("Multiple reset handlers per class are not allowed.");
+            }
+            resetHandlerMethods.forEach(method -> resetHandlers.add(Invokers.forNoArgsMethod(method)));
+        }
+        return resetHandlers;
+    }
+
+    @Override
+    public List<EventSourcedDefinition> eventSourcedCallbacks() {
+        return getEventSourcedMethods(clazz).entrySet().stream()
+                .map(entry -> new EventSourcedDefinition(entry.getKey(), Invokers.forMethod(entry.getValue())))
+                .toList();
+    }
+
+    /**
+     * Recursively find all *eventsourced* event handlers in the inheritance hierarchy, overwriting eventhandlers from superclasses
+     * with eventhandlers from subclasses for the same event type.
+     */
+    private static Map<Type, Method> getEventSourcedMethods(Class<?> clazz) {
+        if (clazz == null) {
+            return new HashMap<>(); // base case
+        }
+        Map<Type, Method> eventSourcedMethods = getEventSourcedMethods(clazz.getSuperclass());
+        eventSourcedMethods.putAll(getAnnotatedMethods(clazz, EventSourced.class).stream().collect(Collectors.toMap(
+                method -> getEventType(method, method.getAnnotation(EventSourced.class)),
+                identity()
+        )));
+        return eventSourcedMethods;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public List<StateCreatorDefinition> stateCreators() {
+        Set<Constructor<Object>> stateConstructors = Arrays.stream(clazz.getDeclaredConstructors())
+                .map(constructor -> ((Constructor<Object>) constructor))
+                .filter(constructor -> constructor.isAnnotationPresent(StateCreator.class))
+                .collect(toSet());
+        if (stateConstructors.stream().anyMatch(constructor -> constructor.getParameterCount() != 1)) {
+            throw new IllegalArgumentException("State Constructors with multiple parameters are not allowed.");
+        }
+        return stateConstructors.stream()
+                .map(constructor -> new StateCreatorDefinition(
+                        getEventType(constructor, constructor.getAnnotation(StateCreator.class)),
+                        (Function<Object, Object>) Invokers.forConstructor(constructor)))
+                .toList();
+    }
+
+    private static Set<Method> getAnnotatedMethods(Class<?> clazz, Class<? extends Annotation> annotationType) {
+        return Arrays.stream(clazz.getDeclaredMethods())
+                .filter(method -> method.isAnnotationPresent(annotationType))
+                .collect(toSet());
+    }
+
+    private static boolean isBatching(Method method) {
+        return method.getParameterCount() == 1 && method.getParameterTypes()[0] == List.class;
+    }
+
+    /**
+     * @return The element type of the list parameter, with Object for raw lists and lists of wildcards or type variables
+     */
+    private static Type getBatchEventType(Method method, Annotation annotation) {
+        Class<?> elementType = Object.class;
+        if (method.getGenericParameterTypes()[0] instanceof ParameterizedType listType
+                && listType.getActualTypeArguments()[0] instanceof Class<?> elementClass) {
+            elementType = elementClass;
+        }
+        return getTypeForAnnotatedParameter(annotation, elementType);
+    }
+
+    private static Type getEventType(Executable annotatedMember, Annotation annotation) {
+        if (annotatedMember.getParameterCount() != 1) {
+            throw new IllegalArgumentException("Event handler method must have exactly one parameter.");
+        }
+        return getTypeForAnnotatedParameter(annotation, annotatedMember.getParameterTypes()[0]);
+    }
+
+}
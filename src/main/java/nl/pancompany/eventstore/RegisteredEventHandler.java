@@ -0,0 +1,37 @@
+package nl.pancompany.eventstore;
+
+import nl.pancompany.eventstore.data.SequencePosition;
+import nl.pancompany.eventstore.query.Query;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A registered event handler instance, with one delivery sequence, or one per partition for partitioned asynchronous
+ * event handlers.
+ *
+ * @param checkpointer Stores the progress of a tracking event handler, null for other event handlers
+ * @param replayQuery  Selects the events that the replayable event handler methods handle
+ */
+record RegisteredEventHandler(Object instance, boolean synchronous, List<EventHandlerSequence> sequences,
+                              Checkpointer checkpointer, Query replayQuery) {
+
+    /**
+     * Replays on the calling thread for a synchronous event handler, or on the lane of an asynchronous event handler,
+     * see {@link EventHandlerSequence#replay(Query, SequencePosition, SequencePosition, List, AtomicBoolean)}.
+     *
+     * @param to        End position, exclusive, or null to replay everything that was delivered live
+     * @param cancelled Set to cancel the replay
+     * @return Completes when the replay has finished, exceptionally if it failed or was cancelled
+     */
+    CompletableFuture<Void> replay(SequencePosition from, SequencePosition to, AtomicBoolean cancelled) {
+        List<EventHandlerSequence> pausedSequences = sequences.subList(1, sequences.size());
+        if (synchronous) {
+            sequences.getFirst().replay(replayQuery, from, to, pausedSequences, cancelled);
+            return CompletableFuture.completedFuture(null);
+        }
+        return sequences.getFirst().scheduleReplay(replayQuery, from, to, pausedSequences, cancelled);
+    }
+
+}
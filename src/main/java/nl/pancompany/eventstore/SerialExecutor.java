@@ -0,0 +1,60 @@
+package nl.pancompany.eventstore;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Runs submitted tasks one at a time, in submission order, on an underlying (possibly multithreaded) executor.
+ * <p>
+ * If the underlying executor rejects a task, the submitted task is rejected as well. Tasks that were submitted earlier
+ * stay queued, and are handed to the underlying executor again on the next submission.
+ */
+class SerialExecutor implements Executor {
+
+    private final Deque<Runnable> tasks = new ArrayDeque<>();
+    private final Executor executor;
+    private Runnable active;
+
+    SerialExecutor(Executor executor) {
+        this.executor = executor;
+    }
+
+    @Override
+    public synchronized void execute(Runnable task) {
+        Runnable serialTask = () -> {
+            try {
+                task.run();
+            } finally {
+                try {
+                    scheduleNext();
+                } catch (RejectedExecutionException e) {
+                    // the next task stays queued, and is retried on the next submission
+                }
+            }
+        };
+        tasks.offer(serialTask);
+        if (active == null) {
+            try {
+                scheduleNext();
+            } catch (RejectedExecutionException e) {
+                tasks.removeLastOccurrence(serialTask);
+                throw e;
+            }
+        }
+    }
+
+    private synchronized void scheduleNext() {
+        if ((active = tasks.poll()) != null) {
+            try {
+                executor.execute(active);
+            } catch (RejectedExecutionException e) {
+                tasks.addFirst(active);
+                active = null;
+                throw e;
+            }
+        }
+    }
+
+}
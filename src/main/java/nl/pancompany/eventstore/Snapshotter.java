@@ -0,0 +1,78 @@
+package nl.pancompany.eventstore;
+
+import lombok.extern.slf4j.Slf4j;
+import nl.pancompany.eventstore.data.SequencePosition;
+import nl.pancompany.eventstore.data.SnapshotOptions;
+import nl.pancompany.eventstore.query.Query;
+import nl.pancompany.eventstore.snapshot.Snapshot;
+
+import java.io.Serializable;
+import java.util.Optional;
+import java.util.concurrent.Executor;
+
+/**
+ * Loads and stores the snapshots of a state class for a query. States are serialized with Java serialization, so the
+ * state class must be {@link Serializable}. The state is serialized on the calling thread, before it can be changed,
+ * and stored in the background, so storing snapshots does not delay the caller.
+ */
+@Slf4j
+class Snapshotter<T> {
+
+    private static final Executor snapshotWriters = task -> Thread.ofVirtual().name("snapshot-writer").start(task);
+
+    private final Class<T> stateClass;
+    private final SnapshotOptions options;
+    private final String snapshotKey;
+
+    Snapshotter(Class<T> stateClass, Query query, SnapshotOptions options) {
+        if (!StateSerialization.isSerializable(stateClass)) {
+            throw new IllegalArgumentException("State class must be Serializable to store snapshots. Class: %s"
+                    .formatted(stateClass.getName()));
+        }
+        this.stateClass = stateClass;
+        this.options = options;
+        this.snapshotKey = StateManager.getStateKey(stateClass, query);
+    }
+
+    /**
+     * @return The latest snapshot, if any and readable; otherwise the state is sourced from its full history
+     */
+    Optional<SnapshottedState<T>> load() {
+        try {
+            return options.snapshotStore().load(snapshotKey)
+                    .map(snapshot -> new SnapshottedState<>(StateSerialization.deserialize(snapshot.state(), stateClass), snapshot.lastSourcedPosition()));
+        } catch (RuntimeException e) {
+            log.warn("Could not load snapshot of {}, sourcing the full history", snapshotKey, e);
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Stores a snapshot of the state if enough events were sourced since the latest snapshot. Failures are logged, the
+     * state is then sourced from the previous snapshot on the next load.
+     */
+    void snapshotIfDue(T state, int sourcedEvents, SequencePosition lastSourcedPosition) {
+        if (sourcedEvents < options.eventsBetweenSnapshots()) {
+            return;
+        }
+        Snapshot snapshot;
+        try {
+            snapshot = new Snapshot(StateSerialization.serialize(state), lastSourcedPosition);
+        } catch (RuntimeException e) {
+            log.warn("Could not serialize snapshot of {}", snapshotKey, e);
+            return;
+        }
+        Executor executor = options.executor() == null ? snapshotWriters : options.executor();
+        executor.execute(() -> {
+            try {
+                options.snapshotStore().store(snapshotKey, snapshot);
+            } catch (RuntimeException e) {
+                log.warn("Could not store snapshot of {}", snapshotKey, e);
+            }
+        });
+    }
+
+    record SnapshottedState<T>(T state, SequencePosition lastSourcedPosition) {
+    }
+
+}
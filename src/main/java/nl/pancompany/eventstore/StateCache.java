@@ -0,0 +1,79 @@
+package nl.pancompany.eventstore;
+
+import lombok.Getter;
+import lombok.Setter;
+import nl.pancompany.eventstore.data.SequencePosition;
+import nl.pancompany.eventstore.query.Query;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static lombok.AccessLevel.PACKAGE;
+
+/**
+ * Bounded cache of loaded states, keyed by state class and query, evicting the least recently loaded state first.
+ * <p>
+ * Each cached state is a private copy that only the cache changes: loads catch it up with the events after its last
+ * sourced position while holding its lock (a single writer per key), and then hand out a copy. Callers can change and
+ * apply events to their copy without affecting the cached state or each other.
+ */
+class StateCache {
+
+    private final int maximumSize;
+    private final Map<StateKey, CachedState<?>> cachedStates;
+
+    StateCache(int maximumSize) {
+        if (maximumSize < 1) {
+            throw new IllegalArgumentException("State cache size must be at least 1.");
+        }
+        this.maximumSize = maximumSize;
+        this.cachedStates = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<StateKey, CachedState<?>> eldest) {
+                return size() > StateCache.this.maximumSize;
+            }
+        };
+    }
+
+    @SuppressWarnings("unchecked")
+    synchronized <T> Optional<CachedState<T>> get(StateKey stateKey) {
+        return Optional.ofNullable((CachedState<T>) cachedStates.get(stateKey));
+    }
+
+    /**
+     * Caches a copy of a freshly loaded state, unless a state that was sourced further is cached already.
+     */
+    synchronized <T> void put(StateKey stateKey, T state, SequencePosition lastSourcedPosition) {
+        CachedState<?> cachedState = cachedStates.get(stateKey);
+        if (cachedState == null || cachedState.getLastSourcedPosition().compareTo(lastSourcedPosition) < 0) {
+            cachedStates.put(stateKey, new CachedState<>(state, lastSourcedPosition));
+        }
+    }
+
+    /**
+     * Key of a cached state. Queries are canonical, so equal queries share a key regardless of the order of their
+     * items, tags and types.
+     */
+    record StateKey(Class<?> stateClass, Query query) {
+    }
+
+    /**
+     * A cached state, only to be changed while holding its lock.
+     */
+    @Getter(PACKAGE)
+    static class CachedState<T> {
+
+        private final ReentrantLock lock = new ReentrantLock();
+        private final T state;
+        @Setter(PACKAGE)
+        private volatile SequencePosition lastSourcedPosition;
+
+        private CachedState(T state, SequencePosition lastSourcedPosition) {
+            this.state = state;
+            this.lastSourcedPosition = lastSourcedPosition;
+        }
+    }
+
+}
@@ -1,26 +1,30 @@
 package nl.pancompany.eventstore;
 
 import lombok.extern.slf4j.Slf4j;
-import nl.pancompany.eventstore.annotation.EventSourced;
+import nl.pancompany.eventstore.StateCache.StateKey;
 import nl.pancompany.eventstore.exception.AppendConditionNotSatisfied;
 import nl.pancompany.eventstore.query.Query;
 import nl.pancompany.eventstore.query.Tag;
 import nl.pancompany.eventstore.query.Tags;
 import nl.pancompany.eventstore.query.Type;
 import nl.pancompany.eventstore.data.AppendCondition;
+import nl.pancompany.eventstore.data.ReadOptions;
+import nl.pancompany.eventstore.data.SnapshotOptions;
 import nl.pancompany.eventstore.data.Event;
 import nl.pancompany.eventstore.data.SequencePosition;
 import nl.pancompany.eventstore.data.SequencedEvent;
 
-import java.lang.annotation.Annotation;
-import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
+import java.time.Duration;
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
 
+import static java.util.Collections.emptyList;
 import static java.util.Objects.requireNonNull;
+import static java.util.stream.Collectors.joining;
 import static nl.pancompany.eventstore.State.uninitializedState;
-import static nl.pancompany.eventstore.query.Type.getTypeForAnnotatedParameter;
 
 @Slf4j
 public class StateManager<T> {
@@ -29,84 +33,211 @@ public class StateManager<T> {
     private final Class<T> stateClass;
     private final InitialStateCreator<T> initialStateCreator;
     private final Query query;
+    private final Snapshotter<T> snapshotter; // null without snapshots
+    private final StateCache stateCache; // null without cache
+    private final CommandContext commandContext; // null unless events are appended by a command context
     private State<T> state;
+    private boolean stale; // an event sourced callback failed after the events were appended, see #apply(List)
 
     private SequencePosition sequencePositionLastSourcedEvent;
     private Map<Type, InvocableEventHandler> eventSourcedCallbacks;
 
     StateManager(EventStore eventStore, Class<T> stateClass, Query query) {
+        this(eventStore, stateClass, query, null, null, null);
+    }
+
+    /**
+     * @param commandContext Context that collects the applied events, and appends them together with the events of the
+     *                       other states of the context
+     */
+    StateManager(EventStore eventStore, Class<T> stateClass, Query query, CommandContext commandContext) {
+        this(eventStore, stateClass, query, null, null, requireNonNull(commandContext));
+    }
+
+    /**
+     * @param snapshotOptions Options to load the state from snapshots, or null to always source the full history
+     * @param stateCache      Cache to load the state from, or null
+     */
+    StateManager(EventStore eventStore, Class<T> stateClass, Query query, SnapshotOptions snapshotOptions,
+                 StateCache stateCache) {
+        this(eventStore, stateClass, query, snapshotOptions, stateCache, null);
+    }
+
+    private StateManager(EventStore eventStore, Class<T> stateClass, Query query, SnapshotOptions snapshotOptions,
+                         StateCache stateCache, CommandContext commandContext) {
         this.eventStore = eventStore;
         this.stateClass = stateClass;
         this.initialStateCreator = new InitialStateCreator<>(stateClass);
         this.query = query;
+        this.snapshotter = snapshotOptions == null ? null : new Snapshotter<>(stateClass, query, snapshotOptions);
+        this.stateCache = stateCache;
+        this.commandContext = commandContext;
         this.state = uninitializedState(stateClass);
     }
 
     @SuppressWarnings("unchecked")
     void load(T emptyStateInstance) {
         requireNonNull(emptyStateInstance);
+        if (loadFromSnapshot()) {
+            return;
+        }
         List<SequencedEvent> events = eventStore.read(query);
         state = new State<>(emptyStateInstance, events, events);
         eventSourcedCallbacks = getEventSourcedCallbacks(stateClass);
         executeEventSourcedCallbacks();
+        snapshotIfDue(events.size());
     }
 
     /**
-     * Recursively find all *eventsourced* event handlers in the inheritance hierarchy, overwriting eventhandlers from superclasses
-     * with eventhandlers from subclasses for the same event type.
+     * Loads the state from the latest snapshot, and sources only the events after it. The append condition of
+     * {@link #apply(List)} is still based on the last event that matches the query, which is the last event of the
+     * snapshot if no events were appended after it.
+     *
+     * @return Whether a snapshot was found
      */
-    private Map<Type, InvocableEventHandler> getEventSourcedCallbacks(Class<? super T> clazz) {
-        if (clazz == null) {
-            return new HashMap<>(); // base case
-        }
-        Map<Type, InvocableEventHandler> eventSourcedCallbacks = getEventSourcedCallbacks(clazz.getSuperclass());
-        Set<Method> stateClassMethods = Arrays.stream(clazz.getDeclaredMethods())
-                .filter(method -> method.isAnnotationPresent(EventSourced.class))
-                .collect(Collectors.toSet());
-        stateClassMethods.forEach(method -> method.setAccessible(true));
-        eventSourcedCallbacks.putAll(stateClassMethods.stream().collect(Collectors.toMap(
-                this::getEventType,
-                method -> eventPayload -> invoke(method, eventPayload)
-        )));
-        return eventSourcedCallbacks;
+    private boolean loadFromSnapshot() {
+        if (snapshotter == null) {
+            return false;
+        }
+        Optional<Snapshotter.SnapshottedState<T>> snapshottedState = snapshotter.load();
+        int lastPosition = eventStore.getLastSequencePosition().map(SequencePosition::value).orElse(-1);
+        if (snapshottedState.isEmpty() || snapshottedState.get().lastSourcedPosition().value() > lastPosition) {
+            return false; // no snapshot, or a snapshot of another event log
+        }
+        List<SequencedEvent> events = eventStore.read(query, ReadOptions.builder()
+                .withStartingPosition(snapshottedState.get().lastSourcedPosition().value() + 1)
+                .build());
+        state = new State<>(snapshottedState.get().state(), events, events);
+        eventSourcedCallbacks = getEventSourcedCallbacks(stateClass);
+        executeEventSourcedCallbacks();
+        if (sequencePositionLastSourcedEvent == null) {
+            sequencePositionLastSourcedEvent = snapshottedState.get().lastSourcedPosition();
+        }
+        snapshotIfDue(events.size());
+        return true;
     }
 
-    private Type getEventType(Method eventSourcedMethod) {
-        if (eventSourcedMethod.getParameters().length != 1) {
-            throw new IllegalArgumentException("Event handler method must have exactly one parameter.");
+    private void snapshotIfDue(int sourcedEvents) {
+        if (snapshotter != null && state.isInitialized() && sequencePositionLastSourcedEvent != null) {
+            snapshotter.snapshotIfDue(state.getState().get(), sourcedEvents, sequencePositionLastSourcedEvent);
         }
-        Class<?> declaredParameterType = eventSourcedMethod.getParameters()[0].getType();
-        Annotation annotation = eventSourcedMethod.getAnnotation(EventSourced.class);
-        return getTypeForAnnotatedParameter(annotation, declaredParameterType);
+    }
+
+    /**
+     * @return The state class name and the query items, independent of the order of items, tags and types, to key
+     * snapshots by in a snapshot store
+     */
+    static String getStateKey(Class<?> stateClass, Query query) {
+        return stateClass.getName() + query.getQueryItems().stream()
+                .map(queryItem -> queryItem.tags().stream().map(Tag::tag).sorted().collect(joining(",", "[tags:", ";"))
+                        + queryItem.types().stream().map(Type::type).sorted().collect(joining(",", "types:", "]")))
+                .sorted()
+                .collect(joining("|", "|", ""));
+    }
+
+    private Map<Type, InvocableEventHandler> getEventSourcedCallbacks(Class<? super T> clazz) {
+        Map<Type, InvocableEventHandler> eventSourcedCallbacks = new HashMap<>();
+        StateMetadata.getEventSourcedCallbacks(clazz).forEach((type, callback) -> eventSourcedCallbacks.put(type,
+                eventPayload -> callback.accept(state.getState().get(), eventPayload)));
+        return eventSourcedCallbacks;
     }
 
     private void executeEventSourcedCallbacks() {
         List<SequencedEvent> events = state.getUnprocessedEvents();
         events.stream()
                 .filter(event -> eventSourcedCallbacks.containsKey(event.type()))
-                .forEach(event -> eventSourcedCallbacks.get(event.type()).invoke(event.payload()));
+                .forEach(event -> invoke(eventSourcedCallbacks.get(event.type()), event.payload()));
         List<SequencedEvent> allEventsLoadedFromEventStore = state.getAllSequencedEvents();
         sequencePositionLastSourcedEvent = allEventsLoadedFromEventStore.isEmpty() ?
                 null : allEventsLoadedFromEventStore.getLast().position();
     }
 
-    private void invoke(Method method, Object eventPayload) {
+    private void invoke(BiConsumer<Object, Object> eventSourcedCallback, Object stateInstance, Object eventPayload) {
+        invoke(event -> eventSourcedCallback.accept(stateInstance, event), eventPayload);
+    }
+
+    private void invoke(InvocableEventHandler eventSourcedCallback, Object eventPayload) {
         try {
-            method.invoke(state.getState().get(), eventPayload);
-        } catch (IllegalAccessException e) {
-            log.warn("Could not invoke handler method for event {}", eventPayload, e);
-        } catch (InvocationTargetException e) {
+            eventSourcedCallback.invoke(eventPayload);
+        } catch (Exception e) {
             log.warn("Invoked handler threw exception for event {}", eventPayload, e);
         }
     }
 
     void load() {
-        List<SequencedEvent> events = eventStore.read(query);
+        if (loadFromCache()) {
+            return;
+        }
+        if (!loadFromSnapshot()) {
+            List<SequencedEvent> events = eventStore.read(query);
+            load(events);
+            snapshotIfDue(events.size());
+        }
+        cacheState();
+    }
+
+    /**
+     * Sources the state from events that were read for its query.
+     */
+    void load(List<SequencedEvent> events) {
         state = initialStateCreator.createState(events);
         eventSourcedCallbacks = getEventSourcedCallbacks(stateClass);
         executeEventSourcedCallbacks();
     }
 
+    /**
+     * Catches up the cached state with the events after its last sourced position, and loads a copy of it.
+     *
+     * @return Whether the state was cached
+     */
+    private boolean loadFromCache() {
+        if (stateCache == null) {
+            return false;
+        }
+        Optional<StateCache.CachedState<T>> cachedState = stateCache.get(new StateKey(stateClass, query));
+        if (cachedState.isEmpty()) {
+            return false;
+        }
+        cachedState.get().getLock().lock();
+        try {
+            List<SequencedEvent> events = eventStore.read(query, ReadOptions.builder()
+                    .withStartingPosition(cachedState.get().getLastSourcedPosition().value() + 1)
+                    .build());
+            Map<Type, BiConsumer<Object, Object>> callbacks = StateMetadata.getEventSourcedCallbacks(stateClass);
+            for (SequencedEvent event : events) {
+                BiConsumer<Object, Object> callback = callbacks.get(event.type());
+                if (callback != null) {
+                    invoke(callback, cachedState.get().getState(), event.payload());
+                }
+            }
+            if (!events.isEmpty()) {
+                cachedState.get().setLastSourcedPosition(events.getLast().position());
+            }
+            state = new State<>(StateSerialization.copy(cachedState.get().getState(), stateClass), emptyList(), emptyList());
+            sequencePositionLastSourcedEvent = cachedState.get().getLastSourcedPosition();
+        } finally {
+            cachedState.get().getLock().unlock();
+        }
+        eventSourcedCallbacks = getEventSourcedCallbacks(stateClass);
+        return true;
+    }
+
+    /**
+     * Caches a copy of the loaded state. Only initialized states of serializable state classes are cached.
+     */
+    private void cacheState() {
+        if (stateCache == null || !state.isInitialized() || sequencePositionLastSourcedEvent == null
+                || !StateSerialization.isSerializable(stateClass)) {
+            return;
+        }
+        try {
+            stateCache.put(new StateKey(stateClass, query), StateSerialization.copy(state.getState().get(), stateClass),
+                    sequencePositionLastSourcedEvent);
+        } catch (RuntimeException e) {
+            log.warn("Could not cache state {}", stateClass.getName(), e);
+        }
+    }
+
     /**
      * Since sourcing state is a resource-intensive operation (requires streaming all sourced events to eventsourced handlers),
      * and since writing to the eventstore is costly because it requires obtaining a write lock,
@@ -165,24 +296,38 @@ public class StateManager<T> {
      * Since sourcing state is a resource-intensive operation (requires streaming all sourced events to eventsourced handlers),
      * and since writing to the eventstore is costly because it requires obtaining a write lock,
      * always try to apply as many events at once as possible when applying a state change.
+     * <p>
+     * A state of a {@link CommandContext} sources the events right away, but they are only appended on
+     * {@link CommandContext#commit()}.
+     * <p>
+     * If an event sourced callback throws after the events were appended, the state is partially sourced. It is then
+     * rolled back and reloaded from the event store on the next {@link #getState()}, {@link #apply(List)} or
+     * {@link #refresh()}. Exceptions are logged, errors are rethrown.
      */
     public void apply(List<Event> events) {
         requireNonNull(events);
         if (events.isEmpty()) {
             return; // nothing to apply
         }
+        if (commandContext != null) {
+            commandContext.checkCollecting();
+        }
+        if (stale) {
+            refresh();
+        }
+        State<T> appliedState = state;
         List<Event> eventsToSourceBack = events;
-        if (!state.isInitialized()) {
-            state = initialStateCreator.createState(events.getFirst().payload()); // try create state from first event
+        if (!appliedState.isInitialized()) {
+            appliedState = initialStateCreator.createState(events.getFirst().payload()); // try create state from first event
             eventsToSourceBack = events.subList(1, events.size());
         }
-        for (Event event : eventsToSourceBack) {
-            InvocableEventHandler eventSourcedEventHandler = eventSourcedCallbacks.get(event.type());
-            if (eventSourcedEventHandler != null) {
-                eventSourcedEventHandler.invoke(event.payload());
-            } // if there is no eventsourced handler, that is fine, we don't apply the event, but only append it to the event store
+        if (commandContext != null) {
+            commandContext.collect(events);
+            state = appliedState;
+            sourceBack(eventsToSourceBack, this::invoke);
+            return;
         }
-        // use query + append condition for storing events
+        // use query + append condition for storing events, the state only changes once they are stored
         try {
             sequencePositionLastSourcedEvent = eventStore.append(events, AppendCondition.builder()
                     .failIfEventsMatch(query)
@@ -193,9 +338,111 @@ public class StateManager<T> {
                     "An (unmanaged) state-modifying event was stored after event sourcing but before applying the " +
                             "current state-modifying event, please retry.", e);
         }
+        state = appliedState;
+        try {
+            sourceBack(eventsToSourceBack, InvocableEventHandler::invoke);
+        } catch (Exception e) {
+            markStale();
+            log.warn("Invoked handler threw exception for applied events {}, the state is reloaded", eventsToSourceBack, e);
+        } catch (Error e) {
+            markStale();
+            throw e;
+        }
+    }
+
+    private void sourceBack(List<Event> events, BiConsumer<InvocableEventHandler, Object> invoker) {
+        for (Event event : events) {
+            InvocableEventHandler eventSourcedEventHandler = eventSourcedCallbacks.get(event.type());
+            if (eventSourcedEventHandler != null) {
+                invoker.accept(eventSourcedEventHandler, event.payload());
+            } // if there is no eventsourced handler, that is fine, we don't apply the event, but only append it to the event store
+        }
+    }
+
+    /**
+     * Rolls back a partially sourced state, the next refresh sources it from the full history again.
+     */
+    private void markStale() {
+        state = uninitializedState(stateClass);
+        sequencePositionLastSourcedEvent = null;
+        stale = true;
+    }
+
+    /**
+     * Sources the events that were appended after the last sourced event into the current state, for instance after a
+     * {@link StateManagerOptimisticLockingException}. Only the new events are read, so refreshing costs far less than
+     * loading the state again. A state that was rolled back after a failed {@link #apply(List)} is loaded again.
+     */
+    public void refresh() {
+        stale = false;
+        List<SequencedEvent> events = sequencePositionLastSourcedEvent == null ? eventStore.read(query) :
+                eventStore.read(query, ReadOptions.builder()
+                        .withStartingPosition(sequencePositionLastSourcedEvent.value() + 1)
+                        .build());
+        if (!state.isInitialized()) {
+            state = initialStateCreator.createState(events);
+        } else if (!events.isEmpty()) {
+            state = new State<>(state.getState().get(), events, events);
+        } else {
+            return; // up to date
+        }
+        executeEventSourcedCallbacks();
+    }
+
+    /**
+     * Executes a command against the state, see {@link #execute(Consumer, int, Duration)}, with up to 5 attempts and
+     * an initial backoff of 10 milliseconds.
+     */
+    public void execute(Consumer<StateManager<T>> command) {
+        execute(command, 5, Duration.ofMillis(10));
+    }
+
+    /**
+     * Executes a command against the state, which decides on and applies its events. When the command fails with a
+     * {@link StateManagerOptimisticLockingException}, the state is refreshed and the command executed again, after a
+     * random backoff of up to the initial backoff, doubled with each attempt.
+     *
+     * @param command        Command that reads the state with {@link #getState()} and applies its events
+     * @param maxAttempts    Number of times the command is executed at most
+     * @param initialBackoff Maximum backoff before the second attempt
+     * @throws StateManagerOptimisticLockingException When the last attempt failed, or when interrupted during backoff
+     */
+    public void execute(Consumer<StateManager<T>> command, int maxAttempts, Duration initialBackoff) {
+        requireNonNull(command);
+        requireNonNull(initialBackoff);
+        if (maxAttempts < 1) {
+            throw new IllegalArgumentException("Max attempts must be at least 1.");
+        }
+        for (int attempt = 1; ; attempt++) {
+            try {
+                command.accept(this);
+                return;
+            } catch (StateManagerOptimisticLockingException e) {
+                if (attempt == maxAttempts) {
+                    throw e;
+                }
+                backoff(initialBackoff.toNanos() << Math.min(attempt - 1, 20), e);
+                refresh();
+            }
+        }
+    }
+
+    private static void backoff(long maxBackoffNanos, StateManagerOptimisticLockingException cause) {
+        if (maxBackoffNanos <= 0) {
+            return;
+        }
+        try {
+            TimeUnit.NANOSECONDS.sleep(ThreadLocalRandom.current().nextLong(maxBackoffNanos));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw cause;
+        }
     }
 
     public Optional<T> getState() {
+        if (stale) {
+            refresh();
+        }
         return state.getState();
     }
 
@@ -0,0 +1,63 @@
+package nl.pancompany.eventstore;
+
+import nl.pancompany.eventstore.dispatch.EventSourcedDefinition;
+import nl.pancompany.eventstore.dispatch.StateCreatorDefinition;
+import nl.pancompany.eventstore.query.Type;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * Resolved event sourced callbacks and constructors of state classes, cached with the class so that loading state
+ * only costs the event sourcing itself. Each part is resolved on first use; a class that fails validation is not
+ * cached and fails again on the next use.
+ */
+final class StateMetadata {
+
+    private static final ClassValue<Map<Type, BiConsumer<Object, Object>>> eventSourcedCallbacks = new ClassValue<>() {
+        @Override
+        protected Map<Type, BiConsumer<Object, Object>> computeValue(Class<?> stateClass) {
+            return Dispatchers.of(stateClass).eventSourcedCallbacks().stream().collect(Collectors.toUnmodifiableMap(
+                    EventSourcedDefinition::type,
+                    EventSourcedDefinition::callback
+            ));
+        }
+    };
+
+    private static final ClassValue<Map<Type, Function<Object, Object>>> stateConstructors = new ClassValue<>() {
+        @Override
+        protected Map<Type, Function<Object, Object>> computeValue(Class<?> stateClass) {
+            return Dispatchers.of(stateClass).stateCreators().stream().collect(Collectors.toUnmodifiableMap(
+                    StateCreatorDefinition::type,
+                    StateCreatorDefinition::constructor
+            ));
+        }
+    };
+
+    private static final ClassValue<Optional<Supplier<Object>>> noArgsConstructors = new ClassValue<>() {
+        @Override
+        protected Optional<Supplier<Object>> computeValue(Class<?> stateClass) {
+            return Optional.ofNullable(Dispatchers.of(stateClass).noArgsConstructor());
+        }
+    };
+
+    private StateMetadata() {
+    }
+
+    static Map<Type, BiConsumer<Object, Object>> getEventSourcedCallbacks(Class<?> stateClass) {
+        return eventSourcedCallbacks.get(stateClass);
+    }
+
+    static Map<Type, Function<Object, Object>> getStateConstructors(Class<?> stateClass) {
+        return stateConstructors.get(stateClass);
+    }
+
+    static Optional<Supplier<Object>> getNoArgsConstructor(Class<?> stateClass) {
+        return noArgsConstructors.get(stateClass);
+    }
+
+}
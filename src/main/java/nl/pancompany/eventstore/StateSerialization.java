@@ -0,0 +1,54 @@
+package nl.pancompany.eventstore;
+
+import java.io.*;
+
+/**
+ * Java serialization of state instances, for snapshots and for copies of cached states.
+ */
+final class StateSerialization {
+
+    private StateSerialization() {
+    }
+
+    static boolean isSerializable(Class<?> stateClass) {
+        return Serializable.class.isAssignableFrom(stateClass);
+    }
+
+    static byte[] serialize(Object state) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream output = new ObjectOutputStream(bytes)) {
+            output.writeObject(state);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not serialize state %s".formatted(state.getClass().getName()), e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Resolves classes with the class loader of the state class first, which may not be visible to this library.
+     */
+    static <T> T deserialize(byte[] state, Class<T> stateClass) {
+        try (ObjectInputStream input = new ObjectInputStream(new ByteArrayInputStream(state)) {
+            @Override
+            protected Class<?> resolveClass(ObjectStreamClass description) throws IOException, ClassNotFoundException {
+                try {
+                    return Class.forName(description.getName(), false, stateClass.getClassLoader());
+                } catch (ClassNotFoundException e) {
+                    return super.resolveClass(description);
+                }
+            }
+        }) {
+            return stateClass.cast(input.readObject());
+        } catch (IOException | ClassNotFoundException e) {
+            throw new IllegalStateException("Could not deserialize state %s".formatted(stateClass.getName()), e);
+        }
+    }
+
+    /**
+     * @return A deep copy of the state
+     */
+    static <T> T copy(T state, Class<T> stateClass) {
+        return deserialize(serialize(state), stateClass);
+    }
+
+}
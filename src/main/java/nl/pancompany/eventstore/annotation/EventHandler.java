@@ -2,6 +2,12 @@ package nl.pancompany.eventstore.annotation;
 
 import java.lang.annotation.*;
 
+/**
+ * Marks an event handler method, which takes a single event, or a {@link java.util.List} of events of the same type to
+ * handle them in batches. Batching methods are passed consecutive events, in log order, in batches limited by
+ * {@link nl.pancompany.eventstore.data.EventHandlerOptions.EventHandlerOptionsBuilder#withBatching}, during both
+ * delivery and replay.
+ */
 @Documented
 @Retention(RetentionPolicy.RUNTIME)
 @Target({ElementType.METHOD})
@@ -9,4 +15,19 @@ public @interface EventHandler {
     String type() default "";
     String[] requiredTags() default {};
     boolean enableReplay() default false;
+
+    /**
+     * Tag prefix to partition the events of an asynchronous event handler by, e.g. "course:". The first tag (in
+     * natural order) of an event that starts with this prefix is its partition key. Events are handled concurrently on
+     * {@link #partitions()} lanes, and strictly in order per partition key. Events without partition key, and events
+     * of non-partitioned methods of the same event handler, are handled on the first lane.
+     * Ignored for synchronous event handlers.
+     */
+    String partitionBy() default "";
+
+    /**
+     * Number of lanes for a partitioned event handler, see {@link #partitionBy()}. If the methods of an event handler
+     * declare different numbers, the highest number is used.
+     */
+    int partitions() default 4;
 }
@@ -0,0 +1,23 @@
+package nl.pancompany.eventstore.checkpoint;
+
+import nl.pancompany.eventstore.data.SequencePosition;
+
+import java.util.Optional;
+
+/**
+ * Stores the position up to which a tracking event handler has processed the event log, so that it can resume from
+ * there after a restart, instead of replaying the log from the start.
+ */
+public interface CheckpointStore {
+
+    /**
+     * @return The last processed position of the event handler with the given name, if it was stored before
+     */
+    Optional<SequencePosition> load(String eventHandlerName);
+
+    /**
+     * @param lastProcessedPosition The position of the last event that was processed (or skipped) by the event handler
+     */
+    void store(String eventHandlerName, SequencePosition lastProcessedPosition);
+
+}
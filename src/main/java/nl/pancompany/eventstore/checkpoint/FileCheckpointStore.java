@@ -0,0 +1,61 @@
+package nl.pancompany.eventstore.checkpoint;
+
+import nl.pancompany.eventstore.data.SequencePosition;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Optional;
+import java.util.Properties;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Stores the checkpoints of all event handlers in a single properties file. The file is replaced atomically on every
+ * store, so it is never left half-written.
+ */
+public class FileCheckpointStore implements CheckpointStore {
+
+    private final Path file;
+    private final Properties checkpoints = new Properties();
+
+    public FileCheckpointStore(Path file) {
+        this.file = requireNonNull(file);
+        if (Files.exists(file)) {
+            try (Reader reader = Files.newBufferedReader(file)) {
+                checkpoints.load(reader);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not read checkpoints from %s".formatted(file), e);
+            }
+        }
+    }
+
+    @Override
+    public synchronized Optional<SequencePosition> load(String eventHandlerName) {
+        return Optional.ofNullable(checkpoints.getProperty(eventHandlerName))
+                .map(Integer::parseInt)
+                .map(SequencePosition::of);
+    }
+
+    @Override
+    public synchronized void store(String eventHandlerName, SequencePosition lastProcessedPosition) {
+        checkpoints.setProperty(eventHandlerName, Integer.toString(lastProcessedPosition.value()));
+        try {
+            Path directory = file.toAbsolutePath().getParent();
+            Files.createDirectories(directory);
+            Path temporaryFile = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+            try (Writer writer = Files.newBufferedWriter(temporaryFile)) {
+                checkpoints.store(writer, null);
+            }
+            Files.move(temporaryFile, file, REPLACE_EXISTING, ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not write checkpoints to %s".formatted(file), e);
+        }
+    }
+
+}
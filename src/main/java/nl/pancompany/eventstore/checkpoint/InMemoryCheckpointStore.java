@@ -0,0 +1,23 @@
+package nl.pancompany.eventstore.checkpoint;
+
+import nl.pancompany.eventstore.data.SequencePosition;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+public class InMemoryCheckpointStore implements CheckpointStore {
+
+    private final Map<String, SequencePosition> checkpoints = new ConcurrentHashMap<>();
+
+    @Override
+    public Optional<SequencePosition> load(String eventHandlerName) {
+        return Optional.ofNullable(checkpoints.get(eventHandlerName));
+    }
+
+    @Override
+    public void store(String eventHandlerName, SequencePosition lastProcessedPosition) {
+        checkpoints.put(eventHandlerName, lastProcessedPosition);
+    }
+
+}
@@ -0,0 +1,10 @@
+package nl.pancompany.eventstore.data;
+
+/**
+ * @param eventHandler Class name of the event handler
+ * @param partition    Partition (lane) of the event handler, 0 for non-partitioned event handlers
+ * @param lag          Number of positions the event handler is behind the last appended event, 0 when up-to-date
+ * @param queueDepth   Number of appended events that are pending for the event handler
+ */
+public record EventHandlerMetrics(String eventHandler, int partition, int lag, int queueDepth) {
+}
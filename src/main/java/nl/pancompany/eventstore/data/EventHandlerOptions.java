@@ -0,0 +1,185 @@
+package nl.pancompany.eventstore.data;
+
+import nl.pancompany.eventstore.checkpoint.CheckpointStore;
+
+import java.time.Duration;
+import java.util.concurrent.Executor;
+
+/**
+ * Options for registering an asynchronous event handler.
+ *
+ * @param executor       The executor the lanes of the event handler run on, or null for lanes owned by the event bus
+ * @param capacity       Maximum number of pending events (handled events not counted) per lane
+ * @param overflowPolicy What to do when a lane exceeds its capacity
+ * @param startingPosition Position of the first event to handle, or null to only handle events appended after
+ *                         registration
+ * @param checkpointStore  Store to track the last processed position in, or null for an untracked event handler
+ * @param trackingName     Name to store the checkpoint of a tracking event handler under
+ * @param eventsBetweenCheckpoints Number of handled events after which a checkpoint is stored
+ * @param timeBetweenCheckpoints   Time after which a checkpoint is stored, checked whenever events were delivered
+ * @param maxBatchSize  Maximum number of events passed to a batching event handler method at once
+ * @param maxBatchDelay Maximum time a lane waits for a batch to fill up before delivering
+ */
+public record EventHandlerOptions(Executor executor, int capacity, OverflowPolicy overflowPolicy,
+                                  SequencePosition startingPosition, CheckpointStore checkpointStore,
+                                  String trackingName, int eventsBetweenCheckpoints, Duration timeBetweenCheckpoints,
+                                  int maxBatchSize, Duration maxBatchDelay) {
+
+    public enum OverflowPolicy {
+        /**
+         * Appenders wait until the lane is back within capacity. Appends done from within an event handler never wait,
+         * so that event handlers cannot deadlock each other.
+         */
+        BLOCK,
+        /**
+         * The lane keeps catching up from the event log. Pending events are never copied or queued, so there is no
+         * memory cost to falling behind, and the capacity is only informational.
+         */
+        CATCH_UP,
+        /**
+         * Appends of events the lane would handle fail with an
+         * {@link nl.pancompany.eventstore.exception.EventHandlerOverflowException} before they are stored. The check
+         * is done before taking the write lock, so concurrent appenders may exceed the capacity slightly.
+         */
+        FAIL
+    }
+
+    public static EventHandlerOptions defaults() {
+        return builder().build();
+    }
+
+    public static EventHandlerOptionsBuilder builder() {
+        return new EventHandlerOptionsBuilder();
+    }
+
+    public static class EventHandlerOptionsBuilder {
+
+        private Executor executor;
+        private int capacity = 10_000;
+        private OverflowPolicy overflowPolicy = OverflowPolicy.CATCH_UP;
+        private SequencePosition startingPosition;
+        private CheckpointStore checkpointStore;
+        private String trackingName;
+        private int eventsBetweenCheckpoints = 100;
+        private Duration timeBetweenCheckpoints = Duration.ofSeconds(1);
+        private int maxBatchSize = 100;
+        private Duration maxBatchDelay = Duration.ZERO;
+
+        private EventHandlerOptionsBuilder() {
+        }
+
+        /**
+         * @param executor The executor the lanes of the event handler run on. Events are still handled one at a time
+         *                 and in order per lane. The executor is owned by the caller, and is not shut down when the
+         *                 event bus is closed. Defaults to null (lanes owned by the event bus).
+         */
+        public EventHandlerOptionsBuilder withExecutor(Executor executor) {
+            this.executor = executor;
+            return this;
+        }
+
+        /**
+         * @param capacity Maximum number of pending events per lane, defaults to 10000
+         */
+        public EventHandlerOptionsBuilder withCapacity(int capacity) {
+            if (capacity < 1) {
+                throw new IllegalArgumentException("Capacity must be at least 1.");
+            }
+            this.capacity = capacity;
+            return this;
+        }
+
+        /**
+         * @param overflowPolicy Policy for when a lane exceeds its capacity, defaults to {@link OverflowPolicy#CATCH_UP}
+         */
+        public EventHandlerOptionsBuilder withOverflowPolicy(OverflowPolicy overflowPolicy) {
+            this.overflowPolicy = overflowPolicy;
+            return this;
+        }
+
+        /**
+         * Makes the event handler a catch-up subscription: it first handles the history from the starting position
+         * on, read from the event store in batches, and then continues with live events.
+         *
+         * @param startingPosition Start position, inclusive, defaults to null (only events appended after registration)
+         */
+        public EventHandlerOptionsBuilder withStartingPosition(int startingPosition) {
+            return withStartingPosition(SequencePosition.of(startingPosition));
+        }
+
+        /**
+         * Makes the event handler a catch-up subscription: it first handles the history from the starting position
+         * on, read from the event store in batches, and then continues with live events.
+         *
+         * @param startingPosition Start position, inclusive, defaults to null (only events appended after registration)
+         */
+        public EventHandlerOptionsBuilder withStartingPosition(SequencePosition startingPosition) {
+            if (startingPosition != null && startingPosition.value() < 0) {
+                throw new IllegalArgumentException("Starting position must not be negative.");
+            }
+            this.startingPosition = startingPosition;
+            return this;
+        }
+
+        /**
+         * Makes the event handler a tracking event handler: its last processed position is stored in the checkpoint
+         * store, and after a restart it resumes from there. Without a stored checkpoint, it starts at the starting
+         * position, or at the start of the event log if no starting position is set. Events processed after the last
+         * checkpoint are delivered again after a restart (at-least-once delivery).
+         *
+         * @param trackingName Name to store the checkpoint under, unique per event handler
+         */
+        public EventHandlerOptionsBuilder withCheckpointStore(CheckpointStore checkpointStore, String trackingName) {
+            if (trackingName == null || trackingName.isBlank()) {
+                throw new IllegalArgumentException("Tracking name must not be blank.");
+            }
+            this.checkpointStore = checkpointStore;
+            this.trackingName = trackingName;
+            return this;
+        }
+
+        /**
+         * Checkpoints are stored in batches, whichever limit is reached first. Defaults to 100 events or 1 second.
+         */
+        public EventHandlerOptionsBuilder withCheckpointInterval(int eventsBetweenCheckpoints, Duration timeBetweenCheckpoints) {
+            if (eventsBetweenCheckpoints < 1) {
+                throw new IllegalArgumentException("Events between checkpoints must be at least 1.");
+            }
+            this.eventsBetweenCheckpoints = eventsBetweenCheckpoints;
+            this.timeBetweenCheckpoints = timeBetweenCheckpoints;
+            return this;
+        }
+
+        /**
+         * Limits the batches of event handler methods that take a list of events, see
+         * {@link nl.pancompany.eventstore.annotation.EventHandler}. Consecutive events for the same method are passed
+         * in one batch, up to the maximum batch size. Without a delay, a batch holds the events that are available
+         * when the lane delivers. With a delay, the lane first waits until enough events are pending to fill a batch,
+         * at most for the given delay. Defaults to 100 events and no delay.
+         */
+        public EventHandlerOptionsBuilder withBatching(int maxBatchSize, Duration maxBatchDelay) {
+            if (maxBatchSize < 1) {
+                throw new IllegalArgumentException("Max batch size must be at least 1.");
+            }
+            if (maxBatchDelay == null || maxBatchDelay.isNegative()) {
+                throw new IllegalArgumentException("Max batch delay must not be negative.");
+            }
+            this.maxBatchSize = maxBatchSize;
+            this.maxBatchDelay = maxBatchDelay;
+            return this;
+        }
+
+        public EventHandlerOptions build() {
+            if (overflowPolicy == null) {
+                throw new IllegalArgumentException("overflowPolicy must be set");
+            }
+            if (timeBetweenCheckpoints == null) {
+                throw new IllegalArgumentException("timeBetweenCheckpoints must be set");
+            }
+            return new EventHandlerOptions(executor, capacity, overflowPolicy, startingPosition, checkpointStore,
+                    trackingName, eventsBetweenCheckpoints, timeBetweenCheckpoints, maxBatchSize, maxBatchDelay);
+        }
+
+    }
+
+}
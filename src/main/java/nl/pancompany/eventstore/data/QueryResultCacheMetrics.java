@@ -0,0 +1,10 @@
+package nl.pancompany.eventstore.data;
+
+/**
+ * @param hits      Number of reads answered from the cache, evaluating only the events appended since
+ * @param misses    Number of reads that evaluated the full query
+ * @param evictions Number of cached results evicted to stay within the maximum size
+ * @param size      Number of cached results
+ */
+public record QueryResultCacheMetrics(long hits, long misses, long evictions, int size) {
+}
@@ -1,10 +1,25 @@
 package nl.pancompany.eventstore.data;
 
+import java.time.Instant;
+
 /**
  * @param startingPosition Start position, inclusive, possible range is [0, {@literal <last-position>}]
  * @param stopPosition     Stop position, exclusive, possible range is [0, {@literal <last-position+1>}]
+ * @param from             Append time from which to read, inclusive, or null
+ * @param to               Append time up to which to read, exclusive, or null
  */
-public record ReadOptions(SequencePosition startingPosition, SequencePosition stopPosition) {
+public record ReadOptions(SequencePosition startingPosition, SequencePosition stopPosition, Instant from, Instant to) {
+
+    /**
+     * Read options without a time range.
+     */
+    public ReadOptions(SequencePosition startingPosition, SequencePosition stopPosition) {
+        this(startingPosition, stopPosition, null, null);
+    }
+
+    public boolean hasTimeRange() {
+        return from != null || to != null;
+    }
 
     public static ReadOptionsBuilder builder() {
         return new ReadOptionsBuilder();
@@ -14,6 +29,8 @@ public record ReadOptions(SequencePosition startingPosition, SequencePosition st
 
         private SequencePosition startingPosition = SequencePosition.of(0);
         private SequencePosition stopPosition;
+        private Instant from;
+        private Instant to;
 
         private ReadOptionsBuilder() {
         }
@@ -52,8 +69,28 @@ public record ReadOptions(SequencePosition startingPosition, SequencePosition st
             return this;
         }
 
+        /**
+         * @param from Append time from which to read, inclusive, combined with the positions to read. Defaults to null
+         *             (no lower time bound)
+         * @return
+         */
+        public ReadOptionsBuilder withFrom(Instant from) {
+            this.from = from;
+            return this;
+        }
+
+        /**
+         * @param to Append time up to which to read, exclusive, combined with the positions to read. Defaults to null
+         *           (no upper time bound)
+         * @return
+         */
+        public ReadOptionsBuilder withTo(Instant to) {
+            this.to = to;
+            return this;
+        }
+
         public ReadOptions build() {
-            return new ReadOptions(this.startingPosition, this.stopPosition);
+            return new ReadOptions(this.startingPosition, this.stopPosition, this.from, this.to);
         }
 
     }
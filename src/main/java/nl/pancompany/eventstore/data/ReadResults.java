@@ -0,0 +1,21 @@
+package nl.pancompany.eventstore.data;
+
+import java.util.List;
+
+/**
+ * The results of reading several queries from one consistent view of the event store, see
+ * {@link nl.pancompany.eventstore.EventStore#readAll(List)}.
+ *
+ * @param events          The events matching each query, in the order of the queries
+ * @param appendCondition Fails if any event matching any of the queries was appended after the read
+ */
+public record ReadResults(List<List<SequencedEvent>> events, AppendCondition appendCondition) {
+
+    /**
+     * @return The events matching the query at the given index
+     */
+    public List<SequencedEvent> events(int queryIndex) {
+        return events.get(queryIndex);
+    }
+
+}
@@ -0,0 +1,65 @@
+package nl.pancompany.eventstore.data;
+
+import nl.pancompany.eventstore.snapshot.SnapshotStore;
+
+import java.util.concurrent.Executor;
+
+/**
+ * Options for loading state from snapshots, see {@link SnapshotStore}.
+ *
+ * @param snapshotStore          Store to load and store the snapshots in
+ * @param eventsBetweenSnapshots Number of events sourced after the latest snapshot, after which a new snapshot is
+ *                               stored
+ * @param executor               The executor snapshots are written on, or null for a virtual thread per snapshot
+ */
+public record SnapshotOptions(SnapshotStore snapshotStore, int eventsBetweenSnapshots, Executor executor) {
+
+    public static SnapshotOptionsBuilder builder() {
+        return new SnapshotOptionsBuilder();
+    }
+
+    public static class SnapshotOptionsBuilder {
+
+        private SnapshotStore snapshotStore;
+        private int eventsBetweenSnapshots = 100;
+        private Executor executor;
+
+        private SnapshotOptionsBuilder() {
+        }
+
+        public SnapshotOptionsBuilder withSnapshotStore(SnapshotStore snapshotStore) {
+            this.snapshotStore = snapshotStore;
+            return this;
+        }
+
+        /**
+         * @param eventsBetweenSnapshots Number of events sourced after the latest snapshot, after which a new snapshot
+         *                               is stored, defaults to 100
+         */
+        public SnapshotOptionsBuilder withEventsBetweenSnapshots(int eventsBetweenSnapshots) {
+            if (eventsBetweenSnapshots < 1) {
+                throw new IllegalArgumentException("Events between snapshots must be at least 1.");
+            }
+            this.eventsBetweenSnapshots = eventsBetweenSnapshots;
+            return this;
+        }
+
+        /**
+         * @param executor The executor snapshots are written on. The executor is owned by the caller. Defaults to null
+         *                 (a virtual thread per snapshot).
+         */
+        public SnapshotOptionsBuilder withExecutor(Executor executor) {
+            this.executor = executor;
+            return this;
+        }
+
+        public SnapshotOptions build() {
+            if (snapshotStore == null) {
+                throw new IllegalArgumentException("snapshotStore must be set");
+            }
+            return new SnapshotOptions(snapshotStore, eventsBetweenSnapshots, executor);
+        }
+
+    }
+
+}
@@ -0,0 +1,43 @@
+package nl.pancompany.eventstore.dispatch;
+
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Resolved event handlers, event sourced callbacks and state creators of a single class, including the ones it
+ * inherits. Dispatchers are generated at build time by the {@link DispatcherProcessor}, as a class named
+ * {@code <binary class name>$$Dispatcher} in the package of the handler or state class. Classes without a generated
+ * dispatcher are resolved through reflection at runtime instead.
+ */
+public interface Dispatcher {
+
+    /**
+     * @return Creates an instance with the no-args constructor, or null if the class has no no-args constructor
+     */
+    Supplier<Object> noArgsConstructor();
+
+    /**
+     * @return The {@link nl.pancompany.eventstore.annotation.EventHandler} methods, at most one per event type, where
+     * methods of subclasses take precedence over methods of superclasses
+     */
+    List<EventHandlerDefinition> eventHandlers();
+
+    /**
+     * @return The {@link nl.pancompany.eventstore.annotation.ResetHandler} methods of the class and its superclasses,
+     * taking the instance
+     */
+    List<Consumer<Object>> resetHandlers();
+
+    /**
+     * @return The {@link nl.pancompany.eventstore.annotation.EventSourced} methods, at most one per event type, where
+     * methods of subclasses take precedence over methods of superclasses
+     */
+    List<EventSourcedDefinition> eventSourcedCallbacks();
+
+    /**
+     * @return The {@link nl.pancompany.eventstore.annotation.StateCreator} constructors of the class
+     */
+    List<StateCreatorDefinition> stateCreators();
+
+}
@@ -0,0 +1,380 @@
+package nl.pancompany.eventstore.dispatch;
+
+import nl.pancompany.eventstore.annotation.EventHandler;
+import nl.pancompany.eventstore.annotation.EventSourced;
+import nl.pancompany.eventstore.annotation.ResetHandler;
+import nl.pancompany.eventstore.annotation.StateCreator;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.*;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.util.*;
+
+/**
+ * Generates a {@link Dispatcher} for every class that declares {@link EventHandler}, {@link ResetHandler},
+ * {@link EventSourced} or {@link StateCreator} members, so that the event bus and state managers invoke them without
+ * reflection. Enable it by adding this library to the annotation processor path of the compiler.
+ * <p>
+ * The processor is registered in {@code META-INF/services}, which is how the compiler finds it on the processor path.
+ * Compilers that also discover processors on the class path (the default before JDK 23, or with {@code -proc:full})
+ * run it for any project that has this library on its class path. To prevent that, compile with {@code -proc:none},
+ * or name the processors to run with {@code -processor}.
+ * <p>
+ * The generated dispatcher calls the members directly, so they (and the class, and the event types) must not be
+ * private, and must be public when declared in another package. Classes that don't meet these requirements, abstract
+ * classes, inner classes and classes with annotated members that would fail validation at runtime are skipped with a
+ * note; they are resolved through reflection at runtime, as without this processor.
+ */
+@SupportedAnnotationTypes({
+        "nl.pancompany.eventstore.annotation.EventHandler",
+        "nl.pancompany.eventstore.annotation.ResetHandler",
+        "nl.pancompany.eventstore.annotation.EventSourced",
+        "nl.pancompany.eventstore.annotation.StateCreator"
+})
+public class DispatcherProcessor extends AbstractProcessor {
+
+    private static final String GENERATED_DISPATCHER_SUFFIX = "$$Dispatcher";
+
+    private final Set<String> generatedDispatchers = new HashSet<>();
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        Set<TypeElement> classes = new LinkedHashSet<>();
+        for (TypeElement annotation : annotations) {
+            for (Element element : roundEnv.getElementsAnnotatedWith(annotation)) {
+                if (element.getEnclosingElement() instanceof TypeElement clazz
+                        && (clazz.getKind() == ElementKind.CLASS || clazz.getKind() == ElementKind.RECORD)) {
+                    classes.add(clazz);
+                }
+            }
+        }
+        for (TypeElement clazz : classes) {
+            String binaryName = processingEnv.getElementUtils().getBinaryName(clazz).toString();
+            if (generatedDispatchers.add(binaryName)) {
+                try {
+                    generateDispatcher(clazz, binaryName);
+                } catch (SkippedException e) {
+                    processingEnv.getMessager().printMessage(Diagnostic.Kind.NOTE,
+                            "No dispatcher generated, resolved through reflection at runtime: " + e.getMessage(), clazz);
+                }
+            }
+        }
+        return false; // other processors may process the same annotations
+    }
+
+    private void generateDispatcher(TypeElement clazz, String binaryName) {
+        String packageName = getPackageName(clazz);
+        if (clazz.getModifiers().contains(Modifier.ABSTRACT)) {
+            throw new SkippedException("abstract class");
+        }
+        if (clazz.getNestingKind() == NestingKind.MEMBER && !clazz.getModifiers().contains(Modifier.STATIC)) {
+            throw new SkippedException("inner class");
+        }
+        requireAccessible(clazz, packageName);
+        String generatedName = (packageName.isEmpty() ? binaryName : binaryName.substring(packageName.length() + 1))
+                + GENERATED_DISPATCHER_SUFFIX;
+        String source = """
+                %s
+                %s@SuppressWarnings({"rawtypes", "unchecked"})
+                public final class %s implements nl.pancompany.eventstore.dispatch.Dispatcher {
+
+                    @Override
+                    public java.util.function.Supplier<Object> noArgsConstructor() {
+                        return %s;
+                    }
+
+                    @Override
+                    public java.util.List<nl.pancompany.eventstore.dispatch.EventHandlerDefinition> eventHandlers() {
+                        return java.util.List.of(%s);
+                    }
+
+                    @Override
+                    public java.util.List<java.util.function.Consumer<Object>> resetHandlers() {
+                        return java.util.List.of(%s);
+                    }
+
+                    @Override
+                    public java.util.List<nl.pancompany.eventstore.dispatch.EventSourcedDefinition> eventSourcedCallbacks() {
+                        return java.util.List.of(%s);
+                    }
+
+                    @Override
+                    public java.util.List<nl.pancompany.eventstore.dispatch.StateCreatorDefinition> stateCreators() {
+                        return java.util.List.of(%s);
+                    }
+
+                }
+                """.formatted(
+                packageName.isEmpty() ? "" : "package " + packageName + ";\n",
+                processingEnv.getElementUtils().getTypeElement("javax.annotation.processing.Generated") == null ? "" :
+                        "@javax.annotation.processing.Generated(\"" + getClass().getName() + "\")\n",
+                generatedName,
+                getNoArgsConstructor(clazz, packageName),
+                join(getEventHandlers(clazz, packageName)),
+                join(getResetHandlers(clazz, packageName)),
+                join(getEventSourcedCallbacks(clazz, packageName)),
+                join(getStateCreators(clazz, packageName)));
+        String qualifiedName = packageName.isEmpty() ? generatedName : packageName + "." + generatedName;
+        try (Writer writer = processingEnv.getFiler().createSourceFile(qualifiedName, clazz).openWriter()) {
+            writer.write(source);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private String getNoArgsConstructor(TypeElement clazz, String packageName) {
+        Optional<ExecutableElement> noArgsConstructor = ElementFilter.constructorsIn(clazz.getEnclosedElements()).stream()
+                .filter(constructor -> constructor.getParameters().isEmpty())
+                .findFirst();
+        if (noArgsConstructor.isEmpty()) {
+            return "null";
+        }
+        requireAccessible(noArgsConstructor.get(), packageName);
+        requireUncheckedExceptions(noArgsConstructor.get());
+        return clazz.getQualifiedName() + "::new";
+    }
+
+    /**
+     * Event handlers of subclasses take precedence over those of superclasses for the same event type. Multiple event
+     * handlers for the same event type in one class are left to reflection, which rejects them.
+     */
+    private List<String> getEventHandlers(TypeElement clazz, String packageName) {
+        Map<String, String> eventHandlers = new LinkedHashMap<>();
+        for (TypeElement declaringClass : getHierarchy(clazz)) {
+            Set<String> declaredEventTypes = new HashSet<>();
+            for (ExecutableElement method : getAnnotatedMethods(declaringClass, EventHandler.class)) {
+                EventHandler annotation = method.getAnnotation(EventHandler.class);
+                boolean batching = isBatching(method);
+                EventType eventType = batching ? getBatchEventType(method, annotation.type(), packageName) :
+                        getEventType(method, annotation.type(), packageName);
+                requireUniqueEventType(declaredEventTypes, eventType, "event handlers", declaringClass);
+                requireAccessible(method, packageName);
+                requireUncheckedExceptions(method);
+                String requiredTags = String.join(", ", new LinkedHashSet<>(Arrays.stream(annotation.requiredTags())
+                        .map(tag -> "nl.pancompany.eventstore.query.Tag.of(" + literal(tag) + ")")
+                        .toList()));
+                eventHandlers.put(eventType.key(), """
+                        new nl.pancompany.eventstore.dispatch.EventHandlerDefinition(%s, java.util.Set.of(%s), %s, %s, %s, %s,
+                                        (instance, event) -> ((%s) instance).%s((%s) event))""".formatted(
+                        eventType.expression(), requiredTags, annotation.enableReplay(),
+                        literal(annotation.partitionBy()), annotation.partitions(), batching,
+                        declaringClass.getQualifiedName(), method.getSimpleName(), eventType.parameterType()));
+            }
+        }
+        return List.copyOf(eventHandlers.values());
+    }
+
+    private List<String> getResetHandlers(TypeElement clazz, String packageName) {
+        List<String> resetHandlers = new ArrayList<>();
+        for (TypeElement declaringClass : getHierarchy(clazz)) {
+            List<ExecutableElement> methods = getAnnotatedMethods(declaringClass, ResetHandler.class);
+            if (methods.size() > 1) {
+                throw new SkippedException("multiple reset handlers in " + declaringClass.getQualifiedName());
+            }
+            for (ExecutableElement method : methods) {
+                if (!method.getParameters().isEmpty()) {
+                    throw new SkippedException("reset handler with parameters " + method);
+                }
+                requireAccessible(method, packageName);
+                requireUncheckedExceptions(method);
+                resetHandlers.add("instance -> ((%s) instance).%s()".formatted(declaringClass.getQualifiedName(),
+                        method.getSimpleName()));
+            }
+        }
+        return resetHandlers;
+    }
+
+    /**
+     * Event sourced callbacks of subclasses take precedence over those of superclasses for the same event type.
+     * Multiple callbacks for the same event type in one class are left to reflection, which rejects them.
+     */
+    private List<String> getEventSourcedCallbacks(TypeElement clazz, String packageName) {
+        Map<String, String> eventSourcedCallbacks = new LinkedHashMap<>();
+        for (TypeElement declaringClass : getHierarchy(clazz)) {
+            Set<String> declaredEventTypes = new HashSet<>();
+            for (ExecutableElement method : getAnnotatedMethods(declaringClass, EventSourced.class)) {
+                EventType eventType = getEventType(method, method.getAnnotation(EventSourced.class).type(), packageName);
+                requireUniqueEventType(declaredEventTypes, eventType, "event sourced callbacks", declaringClass);
+                requireAccessible(method, packageName);
+                requireUncheckedExceptions(method);
+                eventSourcedCallbacks.put(eventType.key(), """
+                        new nl.pancompany.eventstore.dispatch.EventSourcedDefinition(%s,
+                                        (instance, event) -> ((%s) instance).%s((%s) event))""".formatted(
+                        eventType.expression(), declaringClass.getQualifiedName(), method.getSimpleName(),
+                        eventType.parameterType()));
+            }
+        }
+        return List.copyOf(eventSourcedCallbacks.values());
+    }
+
+    private List<String> getStateCreators(TypeElement clazz, String packageName) {
+        List<String> stateCreators = new ArrayList<>();
+        for (ExecutableElement constructor : ElementFilter.constructorsIn(clazz.getEnclosedElements())) {
+            StateCreator annotation = constructor.getAnnotation(StateCreator.class);
+            if (annotation == null) {
+                continue;
+            }
+            EventType eventType = getEventType(constructor, annotation.type(), packageName);
+            requireAccessible(constructor, packageName);
+            requireUncheckedExceptions(constructor);
+            stateCreators.add("""
+                    new nl.pancompany.eventstore.dispatch.StateCreatorDefinition(%s,
+                                    event -> new %s((%s) event))""".formatted(
+                    eventType.expression(), clazz.getQualifiedName(), eventType.parameterType()));
+        }
+        return stateCreators;
+    }
+
+    /**
+     * Mirrors {@link nl.pancompany.eventstore.query.Type#getTypeForAnnotatedParameter}: either an Object parameter with
+     * a type name, or a typed parameter without one.
+     */
+    private EventType getEventType(ExecutableElement member, String typeName, String packageName) {
+        if (member.getParameters().size() != 1) {
+            throw new SkippedException("not exactly one parameter " + member);
+        }
+        return getEventType(member, member.getParameters().getFirst().asType(), typeName, packageName);
+    }
+
+    private boolean isBatching(ExecutableElement method) {
+        return method.getParameters().size() == 1 && processingEnv.getTypeUtils().erasure(
+                method.getParameters().getFirst().asType()).toString().equals("java.util.List");
+    }
+
+    /**
+     * Mirrors the resolution through reflection: the element type of the list parameter, with Object for raw lists and
+     * lists of wildcards or type variables.
+     */
+    private EventType getBatchEventType(ExecutableElement method, String typeName, String packageName) {
+        List<? extends TypeMirror> typeArguments = ((DeclaredType) method.getParameters().getFirst().asType())
+                .getTypeArguments();
+        TypeMirror elementType = typeArguments.isEmpty() || typeArguments.getFirst().getKind() != TypeKind.DECLARED ?
+                processingEnv.getElementUtils().getTypeElement("java.lang.Object").asType() : typeArguments.getFirst();
+        EventType eventType = getEventType(method, elementType, typeName, packageName);
+        return new EventType(eventType.key(), eventType.expression(), "java.util.List");
+    }
+
+    private EventType getEventType(ExecutableElement member, TypeMirror declaredParameterType, String typeName,
+                                   String packageName) {
+        TypeMirror parameterType = processingEnv.getTypeUtils().erasure(declaredParameterType);
+        if (parameterType.getKind() != TypeKind.DECLARED) {
+            throw new SkippedException("parameter of " + member + " is not a class");
+        }
+        TypeElement parameterClass = (TypeElement) ((DeclaredType) parameterType).asElement();
+        boolean objectParameter = parameterClass.getQualifiedName().contentEquals("java.lang.Object");
+        if (objectParameter == typeName.isBlank()) {
+            throw new SkippedException("invalid type of " + member);
+        }
+        if (objectParameter) {
+            return new EventType("name:" + typeName,
+                    "nl.pancompany.eventstore.query.Type.of(" + literal(typeName) + ")", "Object");
+        }
+        requireAccessible(parameterClass, packageName);
+        String className = parameterClass.getQualifiedName().toString();
+        return new EventType("class:" + className, "nl.pancompany.eventstore.query.Type.of(" + className + ".class)",
+                className);
+    }
+
+    /**
+     * @return The class and its superclasses, superclasses first
+     */
+    private List<TypeElement> getHierarchy(TypeElement clazz) {
+        List<TypeElement> hierarchy = new ArrayList<>();
+        for (TypeElement current = clazz; current != null && !current.getQualifiedName().contentEquals("java.lang.Object");
+             current = current.getSuperclass() instanceof DeclaredType superclass ? (TypeElement) superclass.asElement() : null) {
+            hierarchy.addFirst(current);
+        }
+        return hierarchy;
+    }
+
+    private List<ExecutableElement> getAnnotatedMethods(TypeElement clazz, Class<? extends java.lang.annotation.Annotation> annotationType) {
+        List<ExecutableElement> methods = ElementFilter.methodsIn(clazz.getEnclosedElements()).stream()
+                .filter(method -> method.getAnnotation(annotationType) != null)
+                .toList();
+        if (methods.stream().anyMatch(method -> method.getModifiers().contains(Modifier.STATIC))) {
+            throw new SkippedException("static annotated method in " + clazz.getQualifiedName());
+        }
+        return methods;
+    }
+
+    private void requireAccessible(TypeElement clazz, String packageName) {
+        for (Element current = clazz; current instanceof TypeElement type; current = current.getEnclosingElement()) {
+            if (type.getNestingKind() == NestingKind.LOCAL || type.getNestingKind() == NestingKind.ANONYMOUS
+                    || !isAccessible(type.getModifiers(), getPackageName(type), packageName)) {
+                throw new SkippedException(clazz.getQualifiedName() + " is not accessible");
+            }
+        }
+    }
+
+    private void requireAccessible(ExecutableElement member, String packageName) {
+        if (!isAccessible(member.getModifiers(), getPackageName(member), packageName)) {
+            throw new SkippedException(member + " is not accessible");
+        }
+    }
+
+    private static boolean isAccessible(Set<Modifier> modifiers, String declaringPackageName, String packageName) {
+        return modifiers.contains(Modifier.PUBLIC)
+                || !modifiers.contains(Modifier.PRIVATE) && declaringPackageName.equals(packageName);
+    }
+
+    private static void requireUniqueEventType(Set<String> declaredEventTypes, EventType eventType, String members,
+                                               TypeElement declaringClass) {
+        if (!declaredEventTypes.add(eventType.key())) {
+            throw new SkippedException("multiple %s for %s in %s".formatted(members,
+                    eventType.key().substring(eventType.key().indexOf(':') + 1), declaringClass.getQualifiedName()));
+        }
+    }
+
+    private void requireUncheckedExceptions(ExecutableElement member) {
+        TypeMirror runtimeException = processingEnv.getElementUtils().getTypeElement("java.lang.RuntimeException").asType();
+        TypeMirror error = processingEnv.getElementUtils().getTypeElement("java.lang.Error").asType();
+        for (TypeMirror thrownType : member.getThrownTypes()) {
+            if (!processingEnv.getTypeUtils().isAssignable(thrownType, runtimeException)
+                    && !processingEnv.getTypeUtils().isAssignable(thrownType, error)) {
+                throw new SkippedException(member + " throws checked exception " + thrownType);
+            }
+        }
+    }
+
+    private String getPackageName(Element element) {
+        return processingEnv.getElementUtils().getPackageOf(element).getQualifiedName().toString();
+    }
+
+    private String literal(String value) {
+        return processingEnv.getElementUtils().getConstantExpression(value);
+    }
+
+    private static String join(List<String> expressions) {
+        return expressions.isEmpty() ? "" : "\n                " + String.join(",\n                ", expressions);
+    }
+
+    /**
+     * @param key           Identifies the event type, to let subclass members take precedence
+     * @param expression    Creates the {@link nl.pancompany.eventstore.query.Type}
+     * @param parameterType Type to cast the event payload to
+     */
+    private record EventType(String key, String expression, String parameterType) {
+    }
+
+    private static class SkippedException extends RuntimeException {
+        SkippedException(String reason) {
+            super(reason);
+        }
+    }
+
+}
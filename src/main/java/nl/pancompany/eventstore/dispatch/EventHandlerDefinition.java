@@ -0,0 +1,18 @@
+package nl.pancompany.eventstore.dispatch;
+
+import nl.pancompany.eventstore.query.Tag;
+import nl.pancompany.eventstore.query.Type;
+
+import java.util.Set;
+import java.util.function.BiConsumer;
+
+/**
+ * An {@link nl.pancompany.eventstore.annotation.EventHandler} method, with its annotation values resolved.
+ *
+ * @param batching Whether the method takes a {@link java.util.List} of events of its type
+ * @param handler  Invokes the method, taking the event handler instance and the event payload, or a list of event
+ *                 payloads for batching methods
+ */
+public record EventHandlerDefinition(Type type, Set<Tag> requiredTags, boolean replayable, String partitionBy,
+                                     int partitions, boolean batching, BiConsumer<Object, Object> handler) {
+}
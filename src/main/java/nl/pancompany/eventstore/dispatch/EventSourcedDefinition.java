@@ -0,0 +1,13 @@
+package nl.pancompany.eventstore.dispatch;
+
+import nl.pancompany.eventstore.query.Type;
+
+import java.util.function.BiConsumer;
+
+/**
+ * An {@link nl.pancompany.eventstore.annotation.EventSourced} method.
+ *
+ * @param callback Invokes the method, taking the state instance and the event payload
+ */
+public record EventSourcedDefinition(Type type, BiConsumer<Object, Object> callback) {
+}
@@ -0,0 +1,13 @@
+package nl.pancompany.eventstore.dispatch;
+
+import nl.pancompany.eventstore.query.Type;
+
+import java.util.function.Function;
+
+/**
+ * A {@link nl.pancompany.eventstore.annotation.StateCreator} constructor.
+ *
+ * @param constructor Invokes the constructor, taking the event payload
+ */
+public record StateCreatorDefinition(Type type, Function<Object, Object> constructor) {
+}
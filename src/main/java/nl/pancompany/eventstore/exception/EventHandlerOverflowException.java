@@ -0,0 +1,9 @@
+package nl.pancompany.eventstore.exception;
+
+public class EventHandlerOverflowException extends RuntimeException {
+
+    public EventHandlerOverflowException(String message) {
+        super(message);
+    }
+
+}
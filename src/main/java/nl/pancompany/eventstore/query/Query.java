@@ -4,14 +4,32 @@ import lombok.Getter;
 
 import java.util.HashSet;
 import java.util.Set;
+import java.util.stream.Collectors;
 
+/**
+ * Matches the events matched by any of its query items (OR). Queries are immutable and kept in a canonical form, so
+ * that queries matching the same events by the same items are equal, and can be used as keys: query items that are
+ * subsumed by another item are removed, and a query with an item matching all events only keeps that item.
+ */
 public class Query {
 
     @Getter
     private final Set<QueryItem> queryItems;
+    private final int hashCode;
 
     private Query(Set<QueryItem> queryItems) {
-        this.queryItems = queryItems;
+        this.queryItems = normalize(queryItems);
+        this.hashCode = this.queryItems.hashCode();
+    }
+
+    private static Set<QueryItem> normalize(Set<QueryItem> queryItems) {
+        if (queryItems.stream().anyMatch(QueryItem::isAll)) {
+            return Set.of(QueryItem.all());
+        }
+        return queryItems.stream()
+                .filter(queryItem -> queryItems.stream()
+                        .noneMatch(other -> !other.equals(queryItem) && other.subsumes(queryItem)))
+                .collect(Collectors.toUnmodifiableSet());
     }
 
     public static Query all() {
@@ -27,7 +45,22 @@ public class Query {
     }
 
     public boolean isAll() {
-        return new QueryItems(queryItems).isAll();
+        return queryItems.stream().anyMatch(QueryItem::isAll);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return this == o || o instanceof Query query && hashCode == query.hashCode && queryItems.equals(query.queryItems);
+    }
+
+    @Override
+    public int hashCode() {
+        return hashCode;
+    }
+
+    @Override
+    public String toString() {
+        return "Query" + queryItems;
     }
 
     // QueryItems delegate
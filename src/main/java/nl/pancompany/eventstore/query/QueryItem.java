@@ -4,8 +4,24 @@ import java.util.Arrays;
 import java.util.Set;
 import java.util.stream.Collectors;
 
+/**
+ * Matches the events that have all of the tags (AND), and any of the types (OR). No tags or no types match all tags or
+ * types. Query items are immutable.
+ */
 public record QueryItem(Set<Tag> tags, Set<Type> types) {
 
+    public QueryItem {
+        tags = Set.copyOf(tags);
+        types = Set.copyOf(types);
+    }
+
+    /**
+     * @return Whether every event matched by the other query item is also matched by this query item
+     */
+    public boolean subsumes(QueryItem other) {
+        return other.tags.containsAll(tags) && (isAllTypes() || (!other.isAllTypes() && types.containsAll(other.types)));
+    }
+
     public boolean isAll() {
         return isAllTags() && isAllTypes();
     }
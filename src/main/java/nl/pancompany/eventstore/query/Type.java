@@ -1,5 +1,9 @@
 package nl.pancompany.eventstore.query;
 
+import nl.pancompany.eventstore.annotation.EventHandler;
+import nl.pancompany.eventstore.annotation.EventSourced;
+import nl.pancompany.eventstore.annotation.StateCreator;
+
 import java.lang.annotation.Annotation;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
@@ -54,7 +58,14 @@ public record Type(String type, Class<?> clazz) {
     }
 
     private static String getAnnotationTypeElementValue(Annotation annotation) {
-        String type;
+        if (annotation instanceof EventHandler eventHandler) {
+            return eventHandler.type();
+        } else if (annotation instanceof EventSourced eventSourced) {
+            return eventSourced.type();
+        } else if (annotation instanceof StateCreator stateCreator) {
+            return stateCreator.type();
+        }
+        String type; // any other annotation with a type element
         try {
             Method getType = annotation.getClass().getMethod("type");
             getType.setAccessible(true);
@@ -0,0 +1,73 @@
+package nl.pancompany.eventstore.snapshot;
+
+import nl.pancompany.eventstore.data.SequencePosition;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Optional;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Stores each snapshot in its own file in a directory, named after a hash of the snapshot key. A file is replaced
+ * atomically on every store, so it is never left half-written.
+ */
+public class FileSnapshotStore implements SnapshotStore {
+
+    private final Path directory;
+
+    public FileSnapshotStore(Path directory) {
+        this.directory = requireNonNull(directory);
+    }
+
+    @Override
+    public synchronized Optional<Snapshot> load(String snapshotKey) {
+        Path file = getFile(snapshotKey);
+        if (!Files.exists(file)) {
+            return Optional.empty();
+        }
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            SequencePosition lastSourcedPosition = SequencePosition.of(input.readInt());
+            return Optional.of(new Snapshot(input.readAllBytes(), lastSourcedPosition));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not read snapshot from %s".formatted(file), e);
+        }
+    }
+
+    @Override
+    public synchronized void store(String snapshotKey, Snapshot snapshot) {
+        if (load(snapshotKey).filter(stored -> stored.lastSourcedPosition().compareTo(snapshot.lastSourcedPosition()) >= 0)
+                .isPresent()) {
+            return; // a later snapshot is stored already
+        }
+        Path file = getFile(snapshotKey);
+        try {
+            Files.createDirectories(directory);
+            Path temporaryFile = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+            try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporaryFile)))) {
+                output.writeInt(snapshot.lastSourcedPosition().value());
+                output.write(snapshot.state());
+            }
+            Files.move(temporaryFile, file, REPLACE_EXISTING, ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not write snapshot to %s".formatted(file), e);
+        }
+    }
+
+    private Path getFile(String snapshotKey) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(snapshotKey.getBytes(StandardCharsets.UTF_8));
+            return directory.resolve(HexFormat.of().formatHex(hash) + ".snapshot");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+}
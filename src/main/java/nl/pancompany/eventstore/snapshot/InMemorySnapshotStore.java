@@ -0,0 +1,22 @@
+package nl.pancompany.eventstore.snapshot;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+public class InMemorySnapshotStore implements SnapshotStore {
+
+    private final Map<String, Snapshot> snapshots = new ConcurrentHashMap<>();
+
+    @Override
+    public Optional<Snapshot> load(String snapshotKey) {
+        return Optional.ofNullable(snapshots.get(snapshotKey));
+    }
+
+    @Override
+    public void store(String snapshotKey, Snapshot snapshot) {
+        snapshots.merge(snapshotKey, snapshot, (stored, newSnapshot) ->
+                newSnapshot.lastSourcedPosition().compareTo(stored.lastSourcedPosition()) > 0 ? newSnapshot : stored);
+    }
+
+}
@@ -0,0 +1,10 @@
+package nl.pancompany.eventstore.snapshot;
+
+import nl.pancompany.eventstore.data.SequencePosition;
+
+/**
+ * @param state               The serialized state
+ * @param lastSourcedPosition Position of the last event that was sourced into the state
+ */
+public record Snapshot(byte[] state, SequencePosition lastSourcedPosition) {
+}
@@ -0,0 +1,22 @@
+package nl.pancompany.eventstore.snapshot;
+
+import java.util.Optional;
+
+/**
+ * Stores snapshots of the state loaded by a {@link nl.pancompany.eventstore.StateManager}, so that loading the state
+ * only sources the events after the latest snapshot, instead of its full history.
+ */
+public interface SnapshotStore {
+
+    /**
+     * @return The latest snapshot stored under the given key, if any
+     */
+    Optional<Snapshot> load(String snapshotKey);
+
+    /**
+     * Stores the snapshot, unless a snapshot with a later position is stored under the same key already. Snapshots are
+     * written in the background, so they may arrive out of order.
+     */
+    void store(String snapshotKey, Snapshot snapshot);
+
+}
@@ -0,0 +1,78 @@
+package nl.pancompany.eventstore;
+
+import org.junit.jupiter.api.Test;
+
+import java.lang.invoke.MethodHandleProxies;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.util.function.BiConsumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Compares invoking a private one-argument event handler method through {@link Method#invoke}, a method handle proxy
+ * (the fallback of {@link Invokers}) and a generated invoker, in a warmed-up loop. This is a harness, not a JMH
+ * benchmark, so the numbers are indicative only. For example, on JDK 21, per invocation:
+ * <pre>
+ * Method.invoke         6.6-7.3 ns
+ * method handle proxy   15.6-16.4 ns
+ * generated invoker     3.3-3.5 ns
+ * </pre>
+ */
+class InvokersPerformanceTest {
+
+    private static final int WARMUP_ITERATIONS = 2_000_000;
+    private static final int MEASURED_ITERATIONS = 10_000_000;
+
+    @Test
+    void comparesReflectionWithGeneratedInvokers() throws Exception {
+        Method method = Handler.class.getDeclaredMethod("handle", Long.class);
+        method.setAccessible(true);
+        BiConsumer<Object, Object> reflective = (instance, event) -> {
+            try {
+                method.invoke(instance, event);
+            } catch (ReflectiveOperationException e) {
+                throw new IllegalStateException(e);
+            }
+        };
+        @SuppressWarnings("unchecked")
+        BiConsumer<Object, Object> proxy = MethodHandleProxies.asInterfaceInstance(BiConsumer.class,
+                MethodHandles.lookup().unreflect(method).asType(MethodType.methodType(void.class, Object.class, Object.class)));
+        BiConsumer<Object, Object> generated = Invokers.forMethod(method);
+
+        double reflectiveNanos = measure(reflective);
+        double proxyNanos = measure(proxy);
+        double generatedNanos = measure(generated);
+
+        System.out.printf("Method.invoke: %.2f ns/op, method handle proxy: %.2f ns/op, generated invoker: %.2f ns/op%n",
+                reflectiveNanos, proxyNanos, generatedNanos);
+        assertThat(MethodHandleProxies.isWrapperInstance(generated)).isFalse();
+    }
+
+    private static double measure(BiConsumer<Object, Object> invoker) {
+        Handler handler = new Handler();
+        Long event = 1L;
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            invoker.accept(handler, event);
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < MEASURED_ITERATIONS; i++) {
+            invoker.accept(handler, event);
+        }
+        double nanosPerInvocation = (double) (System.nanoTime() - start) / MEASURED_ITERATIONS;
+        assertThat(handler.sum).isEqualTo(WARMUP_ITERATIONS + MEASURED_ITERATIONS); // handled, not optimized away
+        return nanosPerInvocation;
+    }
+
+    private static class Handler {
+
+        private long sum;
+
+        private void handle(Long event) {
+            sum += event;
+        }
+
+    }
+
+}
@@ -0,0 +1,133 @@
+package nl.pancompany.eventstore;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.lang.invoke.MethodHandleProxies;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Method;
+import java.lang.reflect.UndeclaredThrowableException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Invokers are package-private, so unlike the other tests, this test lives in the package of the event store.
+ */
+class InvokersTest {
+
+    @Test
+    void generatesInvokersForPrivateMembers() throws Exception {
+        BiConsumer<Object, Object> handle = Invokers.forMethod(Handler.class.getDeclaredMethod("handle", String.class));
+        Consumer<Object> reset = Invokers.forNoArgsMethod(Handler.class.getDeclaredMethod("reset"));
+        Function<Object, Handler> create = Invokers.forConstructor(Handler.class.getDeclaredConstructor(String.class));
+        Supplier<Handler> createEmpty = Invokers.forNoArgsConstructor(Handler.class.getDeclaredConstructor());
+
+        Handler handler = create.apply("created");
+        handle.accept(handler, "handled");
+        assertThat(handler.handled).containsExactly("created", "handled");
+        reset.accept(handler);
+        assertThat(handler.handled).isEmpty();
+        assertThat(createEmpty.get().handled).isEmpty();
+        assertThat(MethodHandleProxies.isWrapperInstance(handle)).isFalse();
+    }
+
+    @Test
+    void generatedInvokersCacheInvokerPerMember() throws Exception {
+        Method method = Handler.class.getDeclaredMethod("handle", String.class);
+
+        assertThat(Invokers.forMethod(method)).isSameAs(Invokers.forMethod(method));
+    }
+
+    @Test
+    void generatedInvokersThrowExceptionsUnwrapped() throws Exception {
+        BiConsumer<Object, Object> fail = Invokers.forMethod(Handler.class.getDeclaredMethod("fail", String.class));
+        Function<Object, Handler> create = Invokers.forConstructor(Handler.class.getDeclaredConstructor(String.class));
+
+        assertThatThrownBy(() -> fail.accept(new Handler(), "checked"))
+                .isExactlyInstanceOf(IOException.class)
+                .hasMessage("checked");
+        assertThatThrownBy(() -> create.apply(null))
+                .isExactlyInstanceOf(NullPointerException.class);
+    }
+
+    @Test
+    void generatesInvokersForHiddenClasses() throws Exception {
+        Class<?> hiddenClass = defineHiddenClass(Handler.class);
+        Object handler = Invokers.forNoArgsConstructor(hiddenClass.getDeclaredConstructor()).get();
+
+        Invokers.forMethod(hiddenClass.getDeclaredMethod("handle", String.class)).accept(handler, "handled");
+
+        assertThat(hiddenClass.isHidden()).isTrue();
+        assertThat(MethodHandleProxies.isWrapperInstance(Invokers.forMethod(hiddenClass.getDeclaredMethod("handle", String.class))))
+                .isTrue();
+        assertThat(hiddenClass.getDeclaredField("handled").get(handler)).isEqualTo(List.of("handled"));
+    }
+
+    @Test
+    void fallsBackToMethodHandleProxyWithoutPrivateAccess() throws Exception {
+        // java.util is not opened to this module, so a private lookup in ArrayList is not allowed
+        BiConsumer<Object, Object> add = Invokers.forMethod(ArrayList.class.getMethod("add", Object.class));
+        BiConsumer<Object, Object> remove = Invokers.forMethod(ArrayList.class.getMethod("remove", int.class));
+        List<Object> list = new ArrayList<>();
+
+        add.accept(list, "added");
+
+        assertThat(list).containsExactly("added");
+        assertThat(MethodHandleProxies.isWrapperInstance(add)).isTrue();
+        assertThatThrownBy(() -> remove.accept(list, 1))
+                .isExactlyInstanceOf(IndexOutOfBoundsException.class);
+    }
+
+    @Test
+    void methodHandleProxyWrapsCheckedExceptions() throws Exception {
+        Consumer<Object> read = Invokers.forNoArgsMethod(StringReader.class.getMethod("read"));
+        StringReader reader = new StringReader("");
+        reader.close();
+
+        assertThat(MethodHandleProxies.isWrapperInstance(read)).isTrue();
+        assertThatThrownBy(() -> read.accept(reader))
+                .isExactlyInstanceOf(UndeclaredThrowableException.class)
+                .hasCauseExactlyInstanceOf(IOException.class);
+    }
+
+    private static Class<?> defineHiddenClass(Class<?> clazz) throws Exception {
+        try (InputStream classFile = clazz.getResourceAsStream(clazz.getName().substring(clazz.getPackageName().length() + 1) + ".class")) {
+            return MethodHandles.lookup().defineHiddenClass(classFile.readAllBytes(), true).lookupClass();
+        }
+    }
+
+    static class Handler {
+
+        final List<String> handled = new ArrayList<>();
+
+        private Handler() {
+        }
+
+        private Handler(String created) {
+            handled.add(created.toString());
+        }
+
+        private void handle(String event) {
+            handled.add(event);
+        }
+
+        private void reset() {
+            handled.clear();
+        }
+
+        private void fail(String message) throws IOException {
+            throw new IOException(message);
+        }
+
+    }
+
+}
@@ -0,0 +1,226 @@
+package nl.pancompany.eventstore.test;
+
+import nl.pancompany.eventstore.EventStore;
+import nl.pancompany.eventstore.data.Event;
+import nl.pancompany.eventstore.dispatch.DispatcherProcessor;
+import nl.pancompany.eventstore.query.Query;
+import nl.pancompany.eventstore.query.Tag;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.ToolProvider;
+import java.net.URI;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class DispatcherProcessorTest {
+
+    private static final String HANDLER_SOURCE = """
+            package dispatch.test;
+
+            import nl.pancompany.eventstore.annotation.EventHandler;
+            import nl.pancompany.eventstore.annotation.ResetHandler;
+
+            import java.util.ArrayList;
+            import java.util.List;
+
+            public class GeneratedHandler {
+
+                public final List<Object> handledEvents = new ArrayList<>();
+                public final List<String> callers = new ArrayList<>();
+
+                @EventHandler(requiredTags = "One", enableReplay = true)
+                void handle(String event) {
+                    handledEvents.add(event);
+                    callers.add(StackWalker.getInstance().walk(frames -> frames.skip(1).findFirst()).get().getClassName());
+                }
+
+                @EventHandler(enableReplay = true)
+                void handle(List<Integer> events) {
+                    handledEvents.add(List.copyOf(events));
+                }
+
+                @ResetHandler
+                void reset() {
+                    handledEvents.clear();
+                }
+
+            }
+            """;
+
+    private static final String STATE_SOURCE = """
+            package dispatch.test;
+
+            import nl.pancompany.eventstore.annotation.EventSourced;
+            import nl.pancompany.eventstore.annotation.StateCreator;
+
+            import java.util.ArrayList;
+            import java.util.List;
+
+            public class GeneratedState {
+
+                public final List<Object> sourcedEvents = new ArrayList<>();
+
+                @StateCreator
+                GeneratedState(Integer event) {
+                    sourcedEvents.add(event);
+                }
+
+                @EventSourced
+                void on(String event) {
+                    sourcedEvents.add(event);
+                }
+
+            }
+            """;
+
+    private static final String PRIVATE_HANDLER_SOURCE = """
+            package dispatch.test;
+
+            import nl.pancompany.eventstore.annotation.EventHandler;
+
+            public class PrivateHandler {
+
+                @EventHandler
+                private void handle(String event) {
+                }
+
+            }
+            """;
+
+    private static final String DUPLICATE_HANDLER_SOURCE = """
+            package dispatch.test;
+
+            import nl.pancompany.eventstore.annotation.EventHandler;
+
+            public class DuplicateHandler {
+
+                @EventHandler
+                void handle(String event) {
+                }
+
+                @EventHandler
+                void handleAgain(String event) {
+                }
+
+            }
+            """;
+
+    private static final String DUPLICATE_STATE_SOURCE = """
+            package dispatch.test;
+
+            import nl.pancompany.eventstore.annotation.EventSourced;
+
+            public class DuplicateState {
+
+                @EventSourced
+                void on(String event) {
+                }
+
+                @EventSourced
+                void onAgain(String event) {
+                }
+
+            }
+            """;
+
+    private EventStore eventStore;
+
+    @BeforeEach
+    void setUp() {
+        eventStore = new EventStore();
+    }
+
+    @AfterEach
+    void tearDown() {
+        eventStore.close();
+    }
+
+    @Test
+    void eventBusAndStateManagerUseGeneratedDispatchers(@TempDir Path output) throws Exception {
+        DiagnosticCollector<JavaFileObject> diagnostics = compile(output, List.of(
+                source("GeneratedHandler", HANDLER_SOURCE),
+                source("GeneratedState", STATE_SOURCE),
+                source("PrivateHandler", PRIVATE_HANDLER_SOURCE)));
+
+        assertThat(output.resolve("dispatch/test/GeneratedHandler$$Dispatcher.class")).exists();
+        assertThat(output.resolve("dispatch/test/GeneratedState$$Dispatcher.class")).exists();
+        assertThat(output.resolve("dispatch/test/PrivateHandler$$Dispatcher.class")).doesNotExist();
+        assertThat(diagnostics.getDiagnostics()).anyMatch(diagnostic -> diagnostic.getMessage(null)
+                .contains("No dispatcher generated"));
+
+        try (URLClassLoader classLoader = new URLClassLoader(new URL[]{output.toUri().toURL()},
+                getClass().getClassLoader())) {
+            Class<?> handlerClass = classLoader.loadClass("dispatch.test.GeneratedHandler");
+            Object handler = eventStore.getEventBus().registerSynchronousEventHandler(handlerClass);
+            eventStore.append(new Event(1), new Event("tagged", Tag.of("One")), new Event("untagged"));
+            eventStore.getEventBus().replay();
+
+            assertThat(handlerClass.getField("handledEvents").get(handler)).asList().containsExactly(List.of(1), "tagged");
+            assertThat(handlerClass.getField("callers").get(handler)).asList()
+                    .containsOnly("dispatch.test.GeneratedHandler$$Dispatcher");
+
+            Class<?> stateClass = classLoader.loadClass("dispatch.test.GeneratedState");
+            Object state = eventStore.loadState(stateClass, Query.all()).getState().orElseThrow();
+
+            assertThat(stateClass.getField("sourcedEvents").get(state)).asList().containsExactly(1, "tagged", "untagged");
+        }
+    }
+
+    @Test
+    void classesWithMultipleMembersForOneEventTypeAreLeftToReflection(@TempDir Path output) throws Exception {
+        DiagnosticCollector<JavaFileObject> diagnostics = compile(output, List.of(
+                source("DuplicateHandler", DUPLICATE_HANDLER_SOURCE),
+                source("DuplicateState", DUPLICATE_STATE_SOURCE)));
+
+        assertThat(output.resolve("dispatch/test/DuplicateHandler$$Dispatcher.class")).doesNotExist();
+        assertThat(output.resolve("dispatch/test/DuplicateState$$Dispatcher.class")).doesNotExist();
+        assertThat(diagnostics.getDiagnostics()).anyMatch(diagnostic -> diagnostic.getMessage(null)
+                .contains("multiple event handlers for java.lang.String in dispatch.test.DuplicateHandler"));
+        assertThat(diagnostics.getDiagnostics()).anyMatch(diagnostic -> diagnostic.getMessage(null)
+                .contains("multiple event sourced callbacks for java.lang.String in dispatch.test.DuplicateState"));
+
+        try (URLClassLoader classLoader = new URLClassLoader(new URL[]{output.toUri().toURL()},
+                getClass().getClassLoader())) {
+            Class<?> handlerClass = classLoader.loadClass("dispatch.test.DuplicateHandler");
+
+            assertThatThrownBy(() -> eventStore.getEventBus().registerSynchronousEventHandler(handlerClass))
+                    .isInstanceOf(IllegalStateException.class);
+        }
+    }
+
+    private static DiagnosticCollector<JavaFileObject> compile(Path output, List<JavaFileObject> sources) throws Exception {
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+        JavaCompiler.CompilationTask task = compiler.getTask(null, null, diagnostics,
+                List.of("-d", output.toString(), "-classpath", getEventStoreClassPath()), null, sources);
+        task.setProcessors(List.of(new DispatcherProcessor()));
+        assertThat(task.call()).as(diagnostics.getDiagnostics().toString()).isTrue();
+        return diagnostics;
+    }
+
+    private static String getEventStoreClassPath() throws Exception {
+        return Path.of(EventStore.class.getProtectionDomain().getCodeSource().getLocation().toURI()).toString();
+    }
+
+    private static JavaFileObject source(String className, String source) {
+        return new SimpleJavaFileObject(URI.create("string:///dispatch/test/" + className + ".java"), JavaFileObject.Kind.SOURCE) {
+            @Override
+            public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+                return source;
+            }
+        };
+    }
+
+}
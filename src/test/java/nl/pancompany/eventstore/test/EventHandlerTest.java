@@ -3,20 +3,43 @@ package nl.pancompany.eventstore.test;
 import nl.pancompany.eventstore.EventStore;
 import nl.pancompany.eventstore.annotation.EventHandler;
 import nl.pancompany.eventstore.annotation.ResetHandler;
+import nl.pancompany.eventstore.checkpoint.FileCheckpointStore;
+import nl.pancompany.eventstore.checkpoint.InMemoryCheckpointStore;
 import nl.pancompany.eventstore.data.Event;
+import nl.pancompany.eventstore.data.EventHandlerMetrics;
+import nl.pancompany.eventstore.data.EventHandlerOptions;
+import nl.pancompany.eventstore.data.EventHandlerOptions.OverflowPolicy;
 import nl.pancompany.eventstore.data.LoggedException;
 import nl.pancompany.eventstore.data.SequencePosition;
+import nl.pancompany.eventstore.data.SequencedEvent;
+import nl.pancompany.eventstore.exception.EventHandlerOverflowException;
+import nl.pancompany.eventstore.query.Query;
 import nl.pancompany.eventstore.query.Tag;
 import nl.pancompany.eventstore.query.Tags;
 import nl.pancompany.eventstore.query.Type;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
+import java.nio.file.Path;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static java.lang.System.currentTimeMillis;
 import static nl.pancompany.eventstore.test.TestUtil.withoutLogging;
@@ -395,6 +418,698 @@ public class EventHandlerTest {
         assertThat(RecordingEventHandlerClass.myHandledEvents).containsExactlyElementsOf(replayableEvents.subList(0, 42));
     }
 
+    @Test
+    void batchingHandlerHandlesConsecutiveEventsInBatches() {
+        MyEvent a = new MyEvent("a"), b = new MyEvent("b"), c = new MyEvent("c"), d = new MyEvent("d");
+        MyOtherEvent other = new MyOtherEvent("other");
+        BatchingEventHandlerClass instance = new BatchingEventHandlerClass();
+        eventStore.getEventBus().registerSynchronousEventHandler(instance);
+
+        eventStore.append(new Event(a), new Event(b), new Event(c), new Event(other), new Event(new MyNewEvent("skipped")), new Event(d));
+
+        assertThat(instance.invocations).containsExactly(List.of(a, b, c), other, List.of(d));
+
+        eventStore.getEventBus().replay();
+
+        assertThat(instance.invocations).containsExactly(List.of(a, b, c), other, List.of(d));
+    }
+
+    @Test
+    void batchingHandlerHandlesBatchesUpToMaxBatchSize() {
+        List<MyEvent> myEvents = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            myEvents.add(new MyEvent(Integer.toString(i)));
+            eventStore.append(new Event(myEvents.getLast()));
+        }
+        BatchingEventHandlerClass instance = new BatchingEventHandlerClass();
+        eventStore.getEventBus().registerAsynchronousEventHandler(instance, EventHandlerOptions.builder()
+                .withStartingPosition(0)
+                .withBatching(2, Duration.ZERO)
+                .build());
+
+        await().untilAsserted(() -> assertThat(instance.invocations).containsExactly(
+                myEvents.subList(0, 2), myEvents.subList(2, 4), myEvents.subList(4, 5)));
+    }
+
+    @Test
+    void batchingHandlerWaitsForBatchToFillUpToMaxBatchDelay() {
+        BatchingEventHandlerClass instance = new BatchingEventHandlerClass();
+        eventStore.getEventBus().registerAsynchronousEventHandler(instance, EventHandlerOptions.builder()
+                .withBatching(5, Duration.ofSeconds(5))
+                .build());
+        List<MyEvent> myEvents = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            myEvents.add(new MyEvent(Integer.toString(i)));
+            eventStore.append(new Event(myEvents.getLast()));
+        }
+
+        await().atMost(Duration.ofSeconds(2)).untilAsserted(() -> assertThat(instance.invocations).containsExactly(myEvents));
+    }
+
+    @Test
+    void batchingHandlerOnlyCountsEventsForBatchingMethodsToFillBatch() throws InterruptedException {
+        BatchingEventHandlerClass instance = new BatchingEventHandlerClass();
+        eventStore.getEventBus().registerAsynchronousEventHandler(instance, EventHandlerOptions.builder()
+                .withBatching(3, Duration.ofSeconds(5))
+                .build());
+        MyOtherEvent other1 = new MyOtherEvent("other1"), other2 = new MyOtherEvent("other2");
+        MyEvent a = new MyEvent("a"), b = new MyEvent("b"), c = new MyEvent("c");
+
+        eventStore.append(new Event(other1), new Event(other2), new Event(a)); // one event for the batch, not three
+        Thread.sleep(200);
+        assertThat(instance.invocations).isEmpty(); // still waiting for the batch to fill up
+
+        eventStore.append(new Event(b));
+        eventStore.append(new Event(c));
+
+        await().atMost(Duration.ofSeconds(2)).untilAsserted(() -> assertThat(instance.invocations)
+                .containsExactly(other1, other2, List.of(a, b, c)));
+    }
+
+    @Test
+    void synchronousAppendOnlyWaitsForInterestedHandlers() throws InterruptedException {
+        BlockingEventHandlerClass blockingHandler = new BlockingEventHandlerClass();
+        eventStore.getEventBus().registerSynchronousEventHandler(blockingHandler);
+        eventStore.getEventBus().registerSynchronousEventHandler(EventHandlerClass.class);
+        Thread blockedAppender = Thread.ofVirtual().start(() -> eventStore.append(new Event(new MyOtherEvent("slow"))));
+        blockingHandler.entered.await();
+
+        MyEvent myEvent = new MyEvent("fast");
+        eventStore.append(new Event(myEvent)); // not handled by the blocking handler, so must not wait for it
+
+        assertThat(EventHandlerClass.myHandledEvent).isEqualTo(myEvent);
+        assertThat(blockedAppender.isAlive()).isTrue();
+        blockingHandler.release.countDown();
+        blockedAppender.join();
+    }
+
+    @Test
+    void synchronousHandlerHandlesEventsOfConcurrentAppendersInLogOrder() throws InterruptedException {
+        eventStore.getEventBus().registerSynchronousEventHandler(RecordingEventHandlerClass.class);
+        List<Thread> appenders = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            appenders.add(Thread.ofVirtual().start(() -> {
+                for (int j = 0; j < 500; j++) {
+                    eventStore.append(new Event(new MyEvent(Integer.toString(j))), new Event(new MyOtherEvent(Integer.toString(j))));
+                }
+            }));
+        }
+        for (Thread appender : appenders) {
+            appender.join();
+        }
+
+        List<Object> loggedPayloads = eventStore.read(Query.all()).stream().map(SequencedEvent::payload).toList();
+        assertThat(RecordingEventHandlerClass.myHandledEvents).containsExactlyElementsOf(loggedPayloads);
+    }
+
+    @Test
+    void synchronousHandlersCanBeRegisteredWhileAppending() throws Exception {
+        AtomicBoolean appending = new AtomicBoolean(true);
+        List<ProjectionClass> projections = new CopyOnWriteArrayList<>();
+        try (ExecutorService threads = Executors.newVirtualThreadPerTaskExecutor()) {
+            Future<?> appender = threads.submit(() -> {
+                while (appending.get()) {
+                    eventStore.append(new Event(new MyOtherEvent("data")), new Event(new MyEvent("data"), Tag.of("One")));
+                }
+            });
+            List<Future<?>> registrars = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                registrars.add(threads.submit(() -> {
+                    for (int j = 0; j < 50; j++) {
+                        ProjectionClass projection = new ProjectionClass();
+                        eventStore.getEventBus().registerSynchronousEventHandler(projection);
+                        projections.add(projection);
+                    }
+                }));
+            }
+            for (Future<?> registrar : registrars) {
+                registrar.get();
+            }
+            appending.set(false);
+            appender.get();
+        }
+
+        MyOtherEvent lastEvent = new MyOtherEvent("last");
+        eventStore.append(new Event(lastEvent));
+        assertThat(eventStore.getEventBus().hasLoggedExceptions()).isFalse();
+        assertThat(projections).hasSize(400)
+                .allSatisfy(projection -> assertThat(projection.handledEvents.getLast()).isEqualTo(lastEvent));
+    }
+
+    @Test
+    void slowAsynchronousHandlerDoesNotDelayOtherAsynchronousHandlers() throws InterruptedException {
+        MyOtherEvent myOtherEvent = new MyOtherEvent("data");
+        BlockingEventHandlerClass blockingHandler = new BlockingEventHandlerClass();
+        eventStore.getEventBus().registerAsynchronousEventHandler(blockingHandler);
+        eventStore.getEventBus().registerAsynchronousEventHandler(MultiEventHandlerClass.class);
+
+        eventStore.append(new Event(myOtherEvent));
+
+        blockingHandler.entered.await();
+        await().untilAsserted(() -> assertThat(MultiEventHandlerClass.myOtherHandledEvent).isEqualTo(myOtherEvent));
+        blockingHandler.release.countDown();
+    }
+
+    @Test
+    void asynchronousHandlerHandlesEventsInOrderOnProvidedExecutor() {
+        List<Object> myEvents = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            myEvents.add(new MyEvent(Integer.toString(i)));
+        }
+        try (ExecutorService executor = Executors.newFixedThreadPool(4)) {
+            eventStore.getEventBus().registerAsynchronousEventHandler(RecordingEventHandlerClass.class, executor);
+            myEvents.forEach(myEvent -> eventStore.append(new Event(myEvent)));
+
+            await().untilAsserted(() -> assertThat(RecordingEventHandlerClass.myHandledEvents).hasSize(myEvents.size()));
+            assertThat(RecordingEventHandlerClass.myHandledEvents).containsExactlyElementsOf(myEvents);
+        }
+    }
+
+    @Test
+    void partitionedAsynchronousHandlerHandlesEventsInOrderPerPartitionKey() {
+        int entities = 10;
+        int eventsPerEntity = 200;
+        Map<String, List<Object>> expectedEvents = new ConcurrentHashMap<>();
+        PartitionedEventHandlerClass instance = eventStore.getEventBus().registerAsynchronousEventHandler(PartitionedEventHandlerClass.class);
+        for (int i = 0; i < eventsPerEntity; i++) {
+            for (int entity = 0; entity < entities; entity++) {
+                String tag = "Course:" + entity;
+                MyEvent myEvent = new MyEvent(tag, Integer.toString(i));
+                expectedEvents.computeIfAbsent(tag, key -> new ArrayList<>()).add(myEvent);
+                eventStore.append(Event.of(myEvent, Tags.and(tag, "Student:" + i)));
+            }
+        }
+
+        await().untilAsserted(() -> assertThat(instance.handledEvents.values().stream().mapToInt(List::size).sum())
+                .isEqualTo(entities * eventsPerEntity));
+        expectedEvents.forEach((tag, events) -> assertThat(instance.handledEvents.get(tag)).containsExactlyElementsOf(events));
+    }
+
+    @Test
+    void appendFailsWhenAsynchronousHandlerWithFailPolicyIsOverCapacity() throws InterruptedException {
+        BlockingEventHandlerClass blockingHandler = new BlockingEventHandlerClass();
+        eventStore.getEventBus().registerAsynchronousEventHandler(blockingHandler, EventHandlerOptions.builder()
+                .withCapacity(2)
+                .withOverflowPolicy(OverflowPolicy.FAIL)
+                .build());
+        eventStore.append(new Event(new MyOtherEvent("1")));
+        blockingHandler.entered.await();
+        eventStore.append(new Event(new MyOtherEvent("2")));
+
+        assertThatThrownBy(() -> eventStore.append(new Event(new MyOtherEvent("3"))))
+                .isInstanceOf(EventHandlerOverflowException.class);
+        eventStore.append(new Event(new MyEvent("not handled by the blocking handler")));
+        assertThat(eventStore.read(Query.all())).hasSize(3);
+        blockingHandler.release.countDown();
+    }
+
+    @Test
+    void eventsWithoutRequiredTagsDoNotCountTowardsCapacity() throws InterruptedException {
+        BlockingEventHandlerClass blockingHandler = new BlockingFilteringEventHandlerClass();
+        eventStore.getEventBus().registerAsynchronousEventHandler(blockingHandler, EventHandlerOptions.builder()
+                .withCapacity(1)
+                .withOverflowPolicy(OverflowPolicy.FAIL)
+                .build());
+        eventStore.append(new Event(new MyOtherEvent("1")));
+        blockingHandler.entered.await();
+
+        eventStore.append(new Event(new MyEvent("without required tag"), Tag.of("Two")));
+        assertThat(eventStore.getEventBus().getEventHandlerMetrics().getFirst().queueDepth()).isEqualTo(1);
+        assertThatThrownBy(() -> eventStore.append(new Event(new MyEvent("with required tag"), Tag.of("One"))))
+                .isInstanceOf(EventHandlerOverflowException.class);
+        blockingHandler.release.countDown();
+    }
+
+    @Test
+    void appendWaitsWhenAsynchronousHandlerWithBlockPolicyIsOverCapacity() throws InterruptedException {
+        BlockingEventHandlerClass blockingHandler = new BlockingEventHandlerClass();
+        eventStore.getEventBus().registerAsynchronousEventHandler(blockingHandler, EventHandlerOptions.builder()
+                .withCapacity(1)
+                .withOverflowPolicy(OverflowPolicy.BLOCK)
+                .build());
+        eventStore.append(new Event(new MyOtherEvent("1")));
+        blockingHandler.entered.await();
+
+        Thread blockedAppender = Thread.ofVirtual().start(() -> eventStore.append(new Event(new MyOtherEvent("2"))));
+        Thread.sleep(200);
+        assertThat(blockedAppender.isAlive()).isTrue();
+        assertThat(eventStore.read(Query.all())).hasSize(2); // stored, but waiting for the handler to catch up
+
+        blockingHandler.release.countDown();
+        blockedAppender.join();
+    }
+
+    @Test
+    void queueDepthReturnsToZeroAfterConcurrentAppends_WithBlockPolicy() throws Exception {
+        CountingEventHandlerClass countingHandler = new CountingEventHandlerClass();
+        eventStore.getEventBus().registerAsynchronousEventHandler(countingHandler, EventHandlerOptions.builder()
+                .withCapacity(5)
+                .withOverflowPolicy(OverflowPolicy.BLOCK)
+                .build());
+
+        int appendedEvents = appendConcurrently(8, 250);
+
+        assertThat(appendedEvents).isEqualTo(8 * 250);
+        await().untilAsserted(() -> assertThat(countingHandler.handledEvents).hasValue(appendedEvents));
+        await().untilAsserted(() -> assertThat(eventStore.getEventBus().getEventHandlerMetrics().getFirst())
+                .isEqualTo(new EventHandlerMetrics(CountingEventHandlerClass.class.getName(), 0, 0, 0)));
+    }
+
+    @Test
+    void queueDepthReturnsToZeroAfterConcurrentAppends_WithFailPolicy() throws Exception {
+        CountingEventHandlerClass countingHandler = new CountingEventHandlerClass();
+        eventStore.getEventBus().registerAsynchronousEventHandler(countingHandler, EventHandlerOptions.builder()
+                .withCapacity(50)
+                .withOverflowPolicy(OverflowPolicy.FAIL)
+                .build());
+
+        int appendedEvents = appendConcurrently(8, 500);
+
+        await().untilAsserted(() -> assertThat(countingHandler.handledEvents).hasValue(appendedEvents));
+        await().untilAsserted(() -> assertThat(eventStore.getEventBus().getEventHandlerMetrics().getFirst())
+                .isEqualTo(new EventHandlerMetrics(CountingEventHandlerClass.class.getName(), 0, 0, 0)));
+        for (int i = 0; i < 50; i++) {
+            eventStore.append(new Event(new MyOtherEvent("within capacity again")));
+        }
+    }
+
+    @Test
+    void synchronousHandlerIsUpToDateAfterConcurrentAppends() throws Exception {
+        CountingEventHandlerClass countingHandler = new CountingEventHandlerClass();
+        eventStore.getEventBus().registerSynchronousEventHandler(countingHandler);
+
+        int appendedEvents = appendConcurrently(8, 250);
+
+        assertThat(countingHandler.handledEvents).hasValue(appendedEvents);
+        assertThat(eventStore.getEventBus().getEventHandlerMetrics().getFirst())
+                .isEqualTo(new EventHandlerMetrics(CountingEventHandlerClass.class.getName(), 0, 0, 0));
+    }
+
+    /**
+     * @return The number of events that were appended, appends rejected by a full event handler are not counted
+     */
+    private int appendConcurrently(int appenders, int eventsPerAppender) throws Exception {
+        CyclicBarrier start = new CyclicBarrier(appenders);
+        List<Future<Integer>> appended = new ArrayList<>();
+        try (ExecutorService executor = Executors.newFixedThreadPool(appenders)) {
+            for (int appender = 0; appender < appenders; appender++) {
+                appended.add(executor.submit(() -> {
+                    start.await();
+                    int appendedByThisAppender = 0;
+                    for (int i = 0; i < eventsPerAppender; i++) {
+                        try {
+                            eventStore.append(new Event(new MyOtherEvent(Integer.toString(i))));
+                            appendedByThisAppender++;
+                        } catch (EventHandlerOverflowException e) {
+                            // handler is full, try the next event
+                        }
+                    }
+                    return appendedByThisAppender;
+                }));
+            }
+            int total = 0;
+            for (Future<Integer> future : appended) {
+                total += future.get(30, TimeUnit.SECONDS);
+            }
+            return total;
+        }
+    }
+
+    @Test
+    void eventBusReportsLagAndQueueDepthPerHandler() throws InterruptedException {
+        BlockingEventHandlerClass blockingHandler = new BlockingEventHandlerClass();
+        eventStore.getEventBus().registerAsynchronousEventHandler(blockingHandler);
+        eventStore.append(new Event(new MyOtherEvent("1")));
+        blockingHandler.entered.await();
+        eventStore.append(new Event(new MyEvent("not handled")), new Event(new MyOtherEvent("2")));
+
+        EventHandlerMetrics metrics = eventStore.getEventBus().getEventHandlerMetrics().getFirst();
+        assertThat(metrics.eventHandler()).isEqualTo(BlockingEventHandlerClass.class.getName());
+        assertThat(metrics.queueDepth()).isEqualTo(2);
+        assertThat(metrics.lag()).isEqualTo(2);
+
+        blockingHandler.release.countDown();
+        await().untilAsserted(() -> assertThat(eventStore.getEventBus().getEventHandlerMetrics().getFirst())
+                .isEqualTo(new EventHandlerMetrics(BlockingEventHandlerClass.class.getName(), 0, 0, 0)));
+    }
+
+    @Test
+    void catchUpSubscriptionHandlesHistoryFromStartingPositionAndThenLiveEvents() {
+        List<Object> myEvents = new ArrayList<>();
+        for (int i = 0; i < 3000; i++) {
+            MyEvent myEvent = new MyEvent(Integer.toString(i));
+            myEvents.add(myEvent);
+            eventStore.append(new Event(myEvent));
+        }
+
+        eventStore.getEventBus().registerAsynchronousEventHandler(RecordingEventHandlerClass.class, EventHandlerOptions.builder()
+                .withStartingPosition(1000)
+                .build());
+        MyEvent liveEvent = new MyEvent("live");
+        myEvents.add(liveEvent);
+        eventStore.append(new Event(liveEvent));
+
+        await().untilAsserted(() -> assertThat(RecordingEventHandlerClass.myHandledEvents).hasSize(2001));
+        assertThat(RecordingEventHandlerClass.myHandledEvents).containsExactlyElementsOf(myEvents.subList(1000, 3001));
+    }
+
+    @Test
+    void handlerOnCallerExecutorRecoversAfterRejectedDelivery() {
+        AtomicBoolean rejecting = new AtomicBoolean(true);
+        ExecutorService executorService = Executors.newSingleThreadExecutor();
+        try {
+            eventStore.getEventBus().registerAsynchronousEventHandler(RecordingEventHandlerClass.class, task -> {
+                if (rejecting.get()) {
+                    throw new RejectedExecutionException("Executor is saturated");
+                }
+                executorService.execute(task);
+            });
+            MyEvent rejectedEvent = new MyEvent("rejected");
+            MyEvent acceptedEvent = new MyEvent("accepted");
+
+            assertThatThrownBy(() -> eventStore.append(new Event(rejectedEvent)))
+                    .isInstanceOf(RejectedExecutionException.class);
+            rejecting.set(false);
+            eventStore.append(new Event(acceptedEvent));
+
+            await().untilAsserted(() -> assertThat(RecordingEventHandlerClass.myHandledEvents)
+                    .containsExactly(rejectedEvent, acceptedEvent));
+        } finally {
+            executorService.shutdown();
+        }
+    }
+
+    @Test
+    void trackingHandlerResumesAfterStoredCheckpoint() {
+        InMemoryCheckpointStore checkpointStore = new InMemoryCheckpointStore();
+        EventHandlerOptions options = EventHandlerOptions.builder()
+                .withCheckpointStore(checkpointStore, "recorder")
+                .build();
+        List<Object> myEvents = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            MyEvent myEvent = new MyEvent(Integer.toString(i));
+            myEvents.add(myEvent);
+            eventStore.append(new Event(myEvent));
+        }
+        eventStore.getEventBus().registerAsynchronousEventHandler(RecordingEventHandlerClass.class, options);
+        await().untilAsserted(() -> assertThat(RecordingEventHandlerClass.myHandledEvents).hasSize(10));
+        eventStore.close();
+
+        assertThat(checkpointStore.load("recorder")).contains(SequencePosition.of(9));
+
+        eventStore = new EventStore(); // restart on the same event log
+        myEvents.forEach(myEvent -> eventStore.append(new Event(myEvent)));
+        MyEvent newEvent = new MyEvent("new");
+        eventStore.append(new Event(newEvent));
+        RecordingEventHandlerClass.myHandledEvents.clear();
+        eventStore.getEventBus().registerAsynchronousEventHandler(RecordingEventHandlerClass.class, options);
+
+        await().untilAsserted(() -> assertThat(RecordingEventHandlerClass.myHandledEvents).containsExactly(newEvent));
+    }
+
+    @Test
+    void idlePartitionsDoNotHoldBackCheckpointOfPartitionedTrackingHandler() {
+        InMemoryCheckpointStore checkpointStore = new InMemoryCheckpointStore();
+        PartitionedEventHandlerClass instance = eventStore.getEventBus().registerAsynchronousEventHandler(
+                PartitionedEventHandlerClass.class, EventHandlerOptions.builder()
+                        .withCheckpointStore(checkpointStore, "partitioned")
+                        .withCheckpointInterval(1, Duration.ofHours(1))
+                        .build());
+        for (int i = 0; i < 10; i++) { // all events go to the partition of a single course, the others stay idle
+            eventStore.append(Event.of(new MyEvent("Course:0", Integer.toString(i)), Tag.of("Course:0")));
+        }
+
+        await().untilAsserted(() -> assertThat(instance.handledEvents.get("Course:0")).hasSize(10));
+        await().untilAsserted(() -> assertThat(checkpointStore.load("partitioned")).contains(SequencePosition.of(9)));
+    }
+
+    @Test
+    void fileCheckpointStoreKeepsCheckpointsAcrossInstances(@TempDir Path directory) {
+        Path file = directory.resolve("checkpoints.properties");
+        new FileCheckpointStore(file).store("recorder", SequencePosition.of(41));
+
+        FileCheckpointStore checkpointStore = new FileCheckpointStore(file);
+
+        assertThat(checkpointStore.load("recorder")).contains(SequencePosition.of(41));
+        assertThat(checkpointStore.load("other")).isEmpty();
+    }
+
+    @Test
+    void targetedReplayOnlyResetsAndReplaysGivenHandler() {
+        ProjectionClass replayedProjection = new ProjectionClass();
+        ProjectionClass otherProjection = new ProjectionClass();
+        eventStore.getEventBus().registerSynchronousEventHandler(replayedProjection);
+        eventStore.getEventBus().registerSynchronousEventHandler(otherProjection);
+        MyEvent first = new MyEvent("first");
+        MyEvent untagged = new MyEvent("untagged");
+        MyOtherEvent second = new MyOtherEvent("second");
+        MyEvent third = new MyEvent("third");
+        eventStore.append(new Event(first, Tag.of("One")), new Event(untagged), new Event(second),
+                new Event(new MyNewEvent("not replayable")), new Event(third, Tag.of("One")));
+        assertThat(replayedProjection.handledEvents).containsExactly(first, second, third);
+
+        eventStore.getEventBus().replay(replayedProjection, SequencePosition.of(1), null);
+
+        assertThat(replayedProjection.resets).isEqualTo(1);
+        assertThat(replayedProjection.handledEvents).containsExactly(second, third);
+        assertThat(otherProjection.resets).isZero();
+        assertThat(otherProjection.handledEvents).containsExactly(first, second, third);
+    }
+
+    @Test
+    void replayOnlyReplaysEventsOfReplayableTypesWithRequiredTags() {
+        ProjectionClass projection = new ProjectionClass();
+        eventStore.getEventBus().registerAsynchronousEventHandler(projection);
+        MyEvent tagged = new MyEvent("tagged");
+        MyOtherEvent other = new MyOtherEvent("other");
+        eventStore.append(new Event(new MyEvent("untagged")), new Event(tagged, Tag.of("One")),
+                new Event(new MyNewEvent("not replayable")), new Event(other), new Event(new SomeOtherEvent("id", "data")));
+
+        eventStore.getEventBus().replay();
+
+        await().untilAsserted(() -> assertThat(projection.resets).isEqualTo(1));
+        await().untilAsserted(() -> assertThat(projection.handledEvents).containsExactly(tagged, other));
+    }
+
+    @Test
+    void parallelReplayReplaysIndependentHandlersConcurrentlyAndWaitsForAll() {
+        CyclicBarrier allReplaying = new CyclicBarrier(3);
+        List<ReplayBarrierClass> handlers = List.of(new ReplayBarrierClass(allReplaying),
+                new ReplayBarrierClass(allReplaying), new ReplayBarrierClass(allReplaying));
+        eventStore.getEventBus().registerSynchronousEventHandler(handlers.get(0));
+        eventStore.getEventBus().registerSynchronousEventHandler(handlers.get(1));
+        eventStore.getEventBus().registerAsynchronousEventHandler(handlers.get(2));
+        eventStore.append(new Event(new MyEvent("data")));
+
+        eventStore.getEventBus().replayInParallel(); // would time out on the barrier if replayed one after another
+
+        assertThat(handlers).allMatch(handler -> handler.replayed);
+    }
+
+    @Test
+    void parallelReplayCancelsOtherHandlersAndRethrowsWhenAHandlerFails() {
+        withoutLogging(() -> {
+            CountDownLatch failed = new CountDownLatch(1);
+            SlowReplayClass synchronousHandler = new SlowReplayClass(failed);
+            SlowReplayClass asynchronousHandler = new SlowReplayClass(failed);
+            eventStore.getEventBus().registerSynchronousEventHandler(synchronousHandler);
+            eventStore.getEventBus().registerAsynchronousEventHandler(asynchronousHandler);
+            eventStore.getEventBus().registerSynchronousEventHandler(new FailingReplayClass(failed));
+            for (int i = 0; i < 50; i++) {
+                eventStore.append(new Event(new MyEvent("data" + i)));
+            }
+
+            assertThatThrownBy(() -> eventStore.getEventBus().replayInParallel())
+                    .isInstanceOf(IllegalStateException.class)
+                    .hasMessage("Replay failed");
+
+            assertThat(synchronousHandler.replayedEvents.get()).isBetween(1, 49);
+            await().pollDelay(Duration.ofSeconds(1)).untilAsserted(() ->
+                    assertThat(asynchronousHandler.replayedEvents.get()).isBetween(1, 49));
+            assertThat(eventStore.getEventBus().hasLoggedExceptions()).isTrue();
+        });
+    }
+
+    @Test
+    void targetedReplayOfLaggingAsynchronousHandlerHandlesEveryEventOnce() throws Exception {
+        BlockingProjectionClass projection = new BlockingProjectionClass();
+        eventStore.getEventBus().registerAsynchronousEventHandler(projection);
+        MyEvent first = new MyEvent("first");
+        MyEvent second = new MyEvent("second");
+        MyEvent third = new MyEvent("third");
+        eventStore.append(new Event(first));
+        assertThat(projection.handling.await(5, TimeUnit.SECONDS)).isTrue(); // live delivery of first blocks the lane
+
+        eventStore.getEventBus().replay(projection, null, null); // runs on the lane after the live delivery
+        eventStore.append(new Event(second)); // delivered live before the replay
+        projection.release.countDown();
+        eventStore.append(new Event(third));
+
+        await().untilAsserted(() -> {
+            assertThat(projection.resets).isEqualTo(1);
+            assertThat(eventStore.getEventBus().getEventHandlerMetrics().getFirst())
+                    .isEqualTo(new EventHandlerMetrics(BlockingProjectionClass.class.getName(), 0, 0, 0));
+            assertThat(projection.handledEvents).containsExactly(first, second, third);
+        });
+    }
+
+    @Test
+    void parallelReplayOfLaggingAsynchronousHandlerHandlesEveryEventOnce() throws Exception {
+        BlockingProjectionClass projection = new BlockingProjectionClass();
+        ProjectionClass synchronousProjection = new ProjectionClass();
+        eventStore.getEventBus().registerAsynchronousEventHandler(projection);
+        eventStore.getEventBus().registerSynchronousEventHandler(synchronousProjection);
+        MyEvent first = new MyEvent("first");
+        MyEvent second = new MyEvent("second");
+        MyOtherEvent other = new MyOtherEvent("other");
+        eventStore.append(new Event(first));
+        assertThat(projection.handling.await(5, TimeUnit.SECONDS)).isTrue(); // live delivery of first blocks the lane
+
+        CompletableFuture<Void> replay = CompletableFuture.runAsync(() -> eventStore.getEventBus().replayInParallel());
+        await().untilAsserted(() -> assertThat(synchronousProjection.resets).isEqualTo(1));
+        eventStore.append(new Event(second), new Event(other)); // delivered live before the replay of the lagging handler
+        projection.release.countDown();
+        replay.get(5, TimeUnit.SECONDS);
+
+        await().untilAsserted(() -> {
+            assertThat(projection.resets).isEqualTo(1);
+            assertThat(eventStore.getEventBus().getEventHandlerMetrics())
+                    .allMatch(metrics -> metrics.lag() == 0 && metrics.queueDepth() == 0);
+            assertThat(projection.handledEvents).containsExactly(first, second);
+        });
+        assertThat(synchronousProjection.handledEvents).containsExactly(other);
+    }
+
+    @Test
+    void targetedReplayFailsForUnregisteredHandler() {
+        assertThatThrownBy(() -> eventStore.getEventBus().replay(new ProjectionClass(), null, null))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private static class BlockingProjectionClass {
+
+        private final CountDownLatch handling = new CountDownLatch(1);
+        private final CountDownLatch release = new CountDownLatch(1);
+        private final List<Object> handledEvents = new CopyOnWriteArrayList<>();
+        private volatile int resets;
+
+        @ResetHandler
+        private void reset() {
+            resets++;
+            handledEvents.clear();
+        }
+
+        @EventHandler(enableReplay = true)
+        private void handle(MyEvent event) throws Exception {
+            handling.countDown();
+            release.await(5, TimeUnit.SECONDS);
+            handledEvents.add(event);
+        }
+
+    }
+
+    private static class ReplayBarrierClass {
+
+        private final CyclicBarrier allReplaying;
+        private volatile boolean replaying;
+        private volatile boolean replayed;
+
+        ReplayBarrierClass(CyclicBarrier allReplaying) {
+            this.allReplaying = allReplaying;
+        }
+
+        @ResetHandler
+        private void reset() {
+            replaying = true;
+        }
+
+        @EventHandler(enableReplay = true)
+        private void handle(MyEvent event) throws Exception {
+            if (replaying) {
+                allReplaying.await(5, TimeUnit.SECONDS);
+                replayed = true;
+            }
+        }
+
+    }
+
+    private static class SlowReplayClass {
+
+        private final CountDownLatch failed;
+        private final AtomicInteger replayedEvents = new AtomicInteger();
+        private volatile boolean replaying;
+
+        SlowReplayClass(CountDownLatch failed) {
+            this.failed = failed;
+        }
+
+        @ResetHandler
+        private void reset() {
+            replaying = true;
+        }
+
+        @EventHandler(enableReplay = true)
+        private void handle(MyEvent event) throws Exception {
+            if (replaying) {
+                failed.await(5, TimeUnit.SECONDS);
+                Thread.sleep(10);
+                replayedEvents.incrementAndGet();
+            }
+        }
+
+    }
+
+    private static class FailingReplayClass {
+
+        private final CountDownLatch failed;
+        private volatile boolean replaying;
+
+        FailingReplayClass(CountDownLatch failed) {
+            this.failed = failed;
+        }
+
+        @ResetHandler
+        private void reset() {
+            replaying = true;
+        }
+
+        @EventHandler(enableReplay = true)
+        private void handle(MyEvent event) {
+            if (replaying) {
+                failed.countDown();
+                throw new IllegalStateException("Replay failed");
+            }
+        }
+
+    }
+
+    private static class ProjectionClass {
+
+        private final List<Object> handledEvents = new CopyOnWriteArrayList<>();
+        private volatile int resets;
+
+        @ResetHandler
+        private void reset() {
+            resets++;
+            handledEvents.clear();
+        }
+
+        @EventHandler(enableReplay = true, requiredTags = "One")
+        private void handle(MyEvent event) {
+            handledEvents.add(event);
+        }
+
+        @EventHandler(enableReplay = true)
+        private void handle(MyOtherEvent event) {
+            handledEvents.add(event);
+        }
+
+        @EventHandler
+        private void handle(MyNewEvent event) {
+        }
+
+    }
+
     private static class MyEventHandlerChild extends MyEventHandlerParent {
 
         private boolean childResetCalled = false;
@@ -465,6 +1180,70 @@ public class EventHandlerTest {
 
     }
 
+    private static class PartitionedEventHandlerClass {
+
+        private final Map<String, List<Object>> handledEvents = new ConcurrentHashMap<>();
+
+        @EventHandler(partitionBy = "Course:", partitions = 3)
+        private void handle(MyEvent myEvent) {
+            handledEvents.computeIfAbsent(myEvent.id(), id -> new CopyOnWriteArrayList<>()).add(myEvent);
+        }
+
+    }
+
+    private static class BatchingEventHandlerClass {
+
+        private final List<Object> invocations = new CopyOnWriteArrayList<>();
+
+        @ResetHandler
+        private void reset() {
+            invocations.clear();
+        }
+
+        @EventHandler(enableReplay = true)
+        private void handle(List<MyEvent> events) {
+            invocations.add(List.copyOf(events));
+        }
+
+        @EventHandler(enableReplay = true)
+        private void handle(MyOtherEvent event) {
+            invocations.add(event);
+        }
+
+    }
+
+    private static class CountingEventHandlerClass {
+
+        private final AtomicInteger handledEvents = new AtomicInteger();
+
+        @EventHandler
+        private void handle(MyOtherEvent myOtherEvent) {
+            handledEvents.incrementAndGet();
+        }
+
+    }
+
+    private static class BlockingEventHandlerClass {
+
+        private final CountDownLatch entered = new CountDownLatch(1);
+        private final CountDownLatch release = new CountDownLatch(1);
+
+        @EventHandler
+        private void handle(MyOtherEvent myOtherEvent) throws InterruptedException {
+            entered.countDown();
+            release.await();
+        }
+
+    }
+
+    private static class BlockingFilteringEventHandlerClass extends BlockingEventHandlerClass {
+
+        @EventHandler(requiredTags = "One")
+        private void handle(MyEvent myEvent) {
+        }
+
+    }
+
     public static class ThrowingEventHandlerClass {
 
         @EventHandler
@@ -1,5 +1,6 @@
 package nl.pancompany.eventstore.test;
 
+import nl.pancompany.eventstore.CommandContext;
 import nl.pancompany.eventstore.EventStore;
 import nl.pancompany.eventstore.StateManager;
 import nl.pancompany.eventstore.StateManager.StateManagerOptimisticLockingException;
@@ -7,20 +8,30 @@ import nl.pancompany.eventstore.annotation.EventHandler;
 import nl.pancompany.eventstore.annotation.EventSourced;
 import nl.pancompany.eventstore.annotation.StateCreator;
 import nl.pancompany.eventstore.data.Event;
+import nl.pancompany.eventstore.data.SequencePosition;
 import nl.pancompany.eventstore.data.SequencedEvent;
+import nl.pancompany.eventstore.data.SnapshotOptions;
 import nl.pancompany.eventstore.exception.StateConstructionFailedException;
 import nl.pancompany.eventstore.query.Query;
 import nl.pancompany.eventstore.query.Tag;
 import nl.pancompany.eventstore.query.Type;
+import nl.pancompany.eventstore.snapshot.FileSnapshotStore;
+import nl.pancompany.eventstore.snapshot.InMemorySnapshotStore;
+import nl.pancompany.eventstore.snapshot.Snapshot;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
+import java.io.Serializable;
+import java.nio.file.Path;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static nl.pancompany.eventstore.data.SequencedEvent.toEvents;
 import static org.assertj.core.api.Assertions.assertThat;
@@ -200,11 +211,90 @@ public class EventSourcingTest {
         assertThatThrownBy(() -> stateManager.apply(myNewEvent, Tag.of("MyEntity", MY_ENTITY_ID), Type.of(MyNewEvent.class)))
                 .isInstanceOf(StateManagerOptimisticLockingException.class);
         // Assert
-        assertThat(state.myHandledEvents).containsExactly(myInitialEvent, myEvent, myOtherEvent, myNewEvent);
+        assertThat(state.myHandledEvents).containsExactly(myInitialEvent, myEvent, myOtherEvent);
         sequencedEvents = eventStore.read(query);
         assertThat(toEvents(sequencedEvents)).containsExactly(event0, event1, event2, concurrentlySavedEvent);
     }
 
+    @Test
+    void refreshSourcesOnlyConcurrentlySavedEvents_AfterOptimisticLockingException() {
+        eventStore.append(event0, event1);
+        StateManager<MyStateWithoutStateConstructor> stateManager = eventStore.loadState(new MyStateWithoutStateConstructor(), query);
+        MyStateWithoutStateConstructor state = stateManager.getState().get();
+        eventStore.append(event2);
+
+        assertThatThrownBy(() -> stateManager.apply(myNewEvent, Tag.of("MyEntity", MY_ENTITY_ID)))
+                .isInstanceOf(StateManagerOptimisticLockingException.class);
+        stateManager.refresh();
+        stateManager.apply(myNewEvent, Tag.of("MyEntity", MY_ENTITY_ID));
+
+        assertThat(stateManager.getState()).containsSame(state);
+        assertThat(state.myHandledEvents).containsExactly(myInitialEvent, myEvent, myOtherEvent, myNewEvent);
+        assertThat(toEvents(eventStore.read(query))).containsExactly(event0, event1, event2, event3);
+    }
+
+    @Test
+    void refreshInitializesState_WhenStateWasCreatedConcurrently() {
+        StateManager<MyState> stateManager = eventStore.loadState(MyState.class, query);
+        eventStore.append(event0, event1);
+
+        stateManager.refresh();
+
+        assertThat(stateManager.getState().get().myHandledEvents).containsExactly(myInitialEvent, myEvent);
+    }
+
+    @Test
+    void reloadsState_AfterEventSourcedCallbackFailedOnApply() {
+        eventStore.append(event0, event1);
+        StateManager<MyFailingState> stateManager = eventStore.loadState(MyFailingState.class, query);
+        MyFailingState state = stateManager.getState().get();
+        state.failOnNextEvent = true;
+
+        stateManager.apply(List.of(event2, event3)); // stored, but only partially sourced
+
+        assertThat(toEvents(eventStore.read(query))).containsExactly(event0, event1, event2, event3);
+        assertThat(stateManager.getState().get()).isNotSameAs(state);
+        assertThat(stateManager.getState().get().myHandledEvents)
+                .containsExactly(myInitialEvent, myEvent, myOtherEvent, myNewEvent);
+        stateManager.apply(myEvent, Tag.of("MyEntity", MY_ENTITY_ID)); // the append condition is up to date
+        assertThat(stateManager.getState().get().myHandledEvents)
+                .containsExactly(myInitialEvent, myEvent, myOtherEvent, myNewEvent, myEvent);
+    }
+
+    @Test
+    void executeRetriesCommandOnRefreshedState_AfterOptimisticLockingException() {
+        eventStore.append(event0, event1);
+        StateManager<MyState> stateManager = eventStore.loadState(MyState.class, query);
+        AtomicInteger attempts = new AtomicInteger();
+
+        stateManager.execute(manager -> {
+            if (attempts.incrementAndGet() == 1) {
+                eventStore.append(event2); // concurrent command
+            }
+            if (!manager.getState().get().myHandledEvents.contains(myNewEvent)) {
+                manager.apply(myNewEvent, Tag.of("MyEntity", MY_ENTITY_ID));
+            }
+        });
+
+        assertThat(attempts).hasValue(2);
+        assertThat(stateManager.getState().get().myHandledEvents).containsExactly(myInitialEvent, myEvent, myOtherEvent, myNewEvent);
+        assertThat(toEvents(eventStore.read(query))).containsExactly(event0, event1, event2, event3);
+    }
+
+    @Test
+    void executeRethrowsOptimisticLockingException_AfterLastAttempt() {
+        eventStore.append(event0);
+        StateManager<MyState> stateManager = eventStore.loadState(MyState.class, query);
+        AtomicInteger attempts = new AtomicInteger();
+
+        assertThatThrownBy(() -> stateManager.execute(manager -> {
+            attempts.incrementAndGet();
+            eventStore.append(event1); // concurrent command, each attempt
+            manager.apply(myNewEvent, Tag.of("MyEntity", MY_ENTITY_ID));
+        }, 3, Duration.ZERO)).isInstanceOf(StateManagerOptimisticLockingException.class);
+        assertThat(attempts).hasValue(3);
+    }
+
     @Test
     void throwsException_WhenStateClassHasInvalidConstructor() {
         assertThatThrownBy(() -> eventStore.loadState(InvalidStateClass.class, Query.all()))
@@ -374,6 +464,251 @@ public class EventSourcingTest {
         assertThat(toEvents(sequencedEvents)).containsExactly(event0, event1, event2, unsourced, unsourced);
     }
 
+    @Test
+    void loadsStateFromSnapshotAndSourcesOnlyLaterEvents() {
+        SnapshotOptions snapshotOptions = SnapshotOptions.builder()
+                .withSnapshotStore(new InMemorySnapshotStore())
+                .withEventsBetweenSnapshots(3)
+                .withExecutor(Runnable::run)
+                .build();
+        eventStore.append(event0, event1, event2);
+
+        MySnapshottedState state = eventStore.loadState(MySnapshottedState.class, query, snapshotOptions).getState().get();
+        assertThat(state.sourcedEvents).isEqualTo(3);
+
+        eventStore.append(event3);
+        state = eventStore.loadState(MySnapshottedState.class, query, snapshotOptions).getState().get();
+
+        assertThat(state.sourcedEvents).isEqualTo(1);
+        assertThat(state.data).containsExactly("0", "1", "2", "3");
+    }
+
+    @Test
+    void appendConditionOfStateLoadedFromSnapshotIsBasedOnLastMatchingEvent() {
+        SnapshotOptions snapshotOptions = SnapshotOptions.builder()
+                .withSnapshotStore(new InMemorySnapshotStore())
+                .withEventsBetweenSnapshots(1)
+                .withExecutor(Runnable::run)
+                .build();
+        eventStore.append(event0, event1);
+        eventStore.loadState(MySnapshottedState.class, query, snapshotOptions);
+
+        StateManager<MySnapshottedState> stateManager = eventStore.loadState(MySnapshottedState.class, query, snapshotOptions);
+        eventStore.append(event2);
+
+        assertThatThrownBy(() -> stateManager.apply(myNewEvent, Tag.of("MyEntity", MY_ENTITY_ID)))
+                .isInstanceOf(StateManagerOptimisticLockingException.class);
+
+        StateManager<MySnapshottedState> reloadedStateManager = eventStore.loadState(MySnapshottedState.class, query, snapshotOptions);
+        reloadedStateManager.apply(myNewEvent, Tag.of("MyEntity", MY_ENTITY_ID));
+
+        assertThat(reloadedStateManager.getState().get().data).containsExactly("0", "1", "2", "3");
+        assertThat(toEvents(eventStore.read(query))).containsExactly(event0, event1, event2, event3);
+    }
+
+    @Test
+    void fileSnapshotStoreKeepsLatestSnapshotAcrossInstances(@TempDir Path directory) {
+        byte[] state = {1, 2, 3};
+        new FileSnapshotStore(directory).store("key", new Snapshot(state, SequencePosition.of(5)));
+        new FileSnapshotStore(directory).store("key", new Snapshot(new byte[]{4}, SequencePosition.of(4))); // older
+
+        Snapshot snapshot = new FileSnapshotStore(directory).load("key").orElseThrow();
+
+        assertThat(snapshot.state()).containsExactly(state);
+        assertThat(snapshot.lastSourcedPosition()).isEqualTo(SequencePosition.of(5));
+        assertThat(new FileSnapshotStore(directory).load("other key")).isEmpty();
+    }
+
+    @Test
+    void snapshottedStateClassMustBeSerializable() {
+        assertThatThrownBy(() -> eventStore.loadState(MyState.class, query, SnapshotOptions.builder()
+                .withSnapshotStore(new InMemorySnapshotStore())
+                .build()))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void cachedStateOnlySourcesEventsAppendedSinceLastLoad() {
+        eventStore.enableStateCache(10);
+        MyCachedState.sourcedEvents.set(0);
+        eventStore.append(event0, event1, event2);
+
+        assertThat(eventStore.loadState(MyCachedState.class, query).getState().get().data).containsExactly("0", "1", "2");
+        assertThat(MyCachedState.sourcedEvents).hasValue(3);
+
+        eventStore.append(event3);
+
+        assertThat(eventStore.loadState(MyCachedState.class, query).getState().get().data).containsExactly("0", "1", "2", "3");
+        assertThat(eventStore.loadState(MyCachedState.class, query).getState().get().data).containsExactly("0", "1", "2", "3");
+        assertThat(MyCachedState.sourcedEvents).hasValue(4);
+    }
+
+    @Test
+    void cachedStatesAreCopiedOnLoad() {
+        eventStore.enableStateCache(10);
+        eventStore.append(event0, event1);
+        eventStore.loadState(MyCachedState.class, query);
+
+        StateManager<MyCachedState> stateManager = eventStore.loadState(MyCachedState.class, query);
+        StateManager<MyCachedState> concurrentStateManager = eventStore.loadState(MyCachedState.class, query);
+        stateManager.apply(myOtherEvent, Tag.of("MyEntity", MY_ENTITY_ID));
+
+        assertThat(stateManager.getState().get().data).containsExactly("0", "1", "2");
+        assertThat(concurrentStateManager.getState().get().data).containsExactly("0", "1");
+        assertThatThrownBy(() -> concurrentStateManager.apply(myNewEvent, Tag.of("MyEntity", MY_ENTITY_ID)))
+                .isInstanceOf(StateManagerOptimisticLockingException.class);
+        assertThat(eventStore.loadState(MyCachedState.class, query).getState().get().data).containsExactly("0", "1", "2");
+    }
+
+    @Test
+    void equalQueriesShareCachedState() {
+        eventStore.enableStateCache(10);
+        MyCachedState.sourcedEvents.set(0);
+        Query reorderedQuery = Query.taggedWith(Tag.of("MyEntity", MY_ENTITY_ID))
+                .andHavingType(MyUnsourcedEvent.class, MyNewEvent.class, MyOtherEvent.class, MyEvent.class, MyInitialEvent.class);
+        eventStore.append(event0, event1, event2);
+
+        eventStore.loadState(MyCachedState.class, query);
+        assertThat(eventStore.loadState(MyCachedState.class, reorderedQuery).getState().get().data).containsExactly("0", "1", "2");
+        assertThat(MyCachedState.sourcedEvents).hasValue(3);
+    }
+
+    @Test
+    void stateCacheEvictsLeastRecentlyLoadedState() {
+        eventStore.enableStateCache(1);
+        MyCachedState.sourcedEvents.set(0);
+        String otherEntityId = UUID.randomUUID().toString();
+        Query otherQuery = Query.taggedWith(Tag.of("MyEntity", otherEntityId)).andHavingType(MyInitialEvent.class);
+        eventStore.append(event0, event1, Event.of(new MyInitialEvent(otherEntityId, "0"), Tag.of("MyEntity", otherEntityId)));
+
+        eventStore.loadState(MyCachedState.class, query);
+        eventStore.loadState(MyCachedState.class, otherQuery);
+        eventStore.loadState(MyCachedState.class, otherQuery);
+        assertThat(MyCachedState.sourcedEvents).hasValue(3);
+
+        eventStore.loadState(MyCachedState.class, query);
+        assertThat(MyCachedState.sourcedEvents).hasValue(5);
+    }
+
+    @Test
+    void commandContextAppendsEventsOfAllStatesAtOnce() {
+        String otherEntityId = UUID.randomUUID().toString();
+        Query otherQuery = Query.taggedWith(Tag.of("MyEntity", otherEntityId)).andHavingType(MyInitialEvent.class, MyEvent.class);
+        Event otherEvent0 = Event.of(new MyInitialEvent(otherEntityId, "0"), Tag.of("MyEntity", otherEntityId));
+        Event otherEvent1 = Event.of(new MyEvent(otherEntityId, "1"), Tag.of("MyEntity", otherEntityId));
+        eventStore.append(event0, event1, otherEvent0);
+
+        CommandContext context = eventStore.createCommandContext();
+        StateManager<MyState> stateManager = context.addState(MyState.class, query);
+        StateManager<MyState> otherStateManager = context.addState(MyState.class, otherQuery);
+        context.load();
+        stateManager.apply(myOtherEvent, Tag.of("MyEntity", MY_ENTITY_ID));
+        otherStateManager.apply(otherEvent1.payload(), Tag.of("MyEntity", otherEntityId));
+
+        assertThat(stateManager.getState().get().myHandledEvents).containsExactly(myInitialEvent, myEvent, myOtherEvent);
+        assertThat(otherStateManager.getState().get().myHandledEvents).containsExactly(otherEvent0.payload(), otherEvent1.payload());
+        assertThat(eventStore.read(Query.all())).hasSize(3);
+        assertThat(context.commit()).contains(SequencePosition.of(4));
+        assertThat(toEvents(eventStore.read(Query.all()))).containsExactly(event0, event1, otherEvent0, event2, otherEvent1);
+    }
+
+    @Test
+    void commandContextAppendsNoEvents_WhenQueryOfAnyStateGetsModifiedBeforeCommit() {
+        String otherEntityId = UUID.randomUUID().toString();
+        Query otherQuery = Query.taggedWith(Tag.of("MyEntity", otherEntityId)).andHavingType(MyInitialEvent.class, MyEvent.class);
+        Event otherEvent0 = Event.of(new MyInitialEvent(otherEntityId, "0"), Tag.of("MyEntity", otherEntityId));
+        eventStore.append(event0);
+
+        CommandContext context = eventStore.createCommandContext();
+        StateManager<MyState> stateManager = context.addState(MyState.class, query);
+        context.addState(MyState.class, otherQuery);
+        context.load();
+        stateManager.apply(myEvent, Tag.of("MyEntity", MY_ENTITY_ID));
+        eventStore.append(otherEvent0); // concurrently appended
+
+        assertThatThrownBy(context::commit).isInstanceOf(StateManagerOptimisticLockingException.class);
+        assertThat(toEvents(eventStore.read(Query.all()))).containsExactly(event0, otherEvent0);
+    }
+
+    @Test
+    void commandContextMustBeLoadedOnceBeforeApplyingAndCommitting() {
+        eventStore.append(event0);
+        CommandContext context = eventStore.createCommandContext();
+        StateManager<MyState> stateManager = context.addState(MyState.class, query);
+
+        assertThatThrownBy(() -> stateManager.apply(myEvent, Tag.of("MyEntity", MY_ENTITY_ID)))
+                .isInstanceOf(IllegalStateException.class);
+        assertThatThrownBy(context::commit).isInstanceOf(IllegalStateException.class);
+        context.load();
+        assertThatThrownBy(() -> context.addState(MyState.class, query)).isInstanceOf(IllegalStateException.class);
+        assertThatThrownBy(context::load).isInstanceOf(IllegalStateException.class);
+        assertThat(context.commit()).isEmpty();
+        assertThatThrownBy(() -> stateManager.apply(myEvent, Tag.of("MyEntity", MY_ENTITY_ID)))
+                .isInstanceOf(IllegalStateException.class);
+    }
+
+    private static class MyCachedState implements Serializable {
+
+        private static final AtomicInteger sourcedEvents = new AtomicInteger();
+        private final List<String> data = new ArrayList<>();
+
+        @StateCreator
+        private MyCachedState(MyInitialEvent event) {
+            data.add(event.data());
+            sourcedEvents.incrementAndGet();
+        }
+
+        @EventSourced
+        private void handle(MyEvent event) {
+            data.add(event.data());
+            sourcedEvents.incrementAndGet();
+        }
+
+        @EventSourced
+        private void handle(MyOtherEvent myOtherEvent) {
+            data.add(myOtherEvent.data());
+            sourcedEvents.incrementAndGet();
+        }
+
+        @EventSourced
+        private void handle(MyNewEvent myNewEvent) {
+            data.add(myNewEvent.data());
+            sourcedEvents.incrementAndGet();
+        }
+
+    }
+
+    private static class MySnapshottedState implements Serializable {
+
+        private final List<String> data = new ArrayList<>();
+        private transient int sourcedEvents; // since loading
+
+        @StateCreator
+        private MySnapshottedState(MyInitialEvent event) {
+            data.add(event.data());
+            sourcedEvents++;
+        }
+
+        @EventSourced
+        private void handle(MyEvent event) {
+            data.add(event.data());
+            sourcedEvents++;
+        }
+
+        @EventSourced
+        private void handle(MyOtherEvent myOtherEvent) {
+            data.add(myOtherEvent.data());
+            sourcedEvents++;
+        }
+
+        @EventSourced
+        private void handle(MyNewEvent myNewEvent) {
+            data.add(myNewEvent.data());
+            sourcedEvents++;
+        }
+
+    }
+
     private static class InvalidStateClass {
 
         private final List<Object> myHandledEvents = new CopyOnWriteArrayList<>();
@@ -430,6 +765,37 @@ public class EventSourcingTest {
 
     }
 
+    private static class MyFailingState {
+
+        private final List<Object> myHandledEvents = new CopyOnWriteArrayList<>();
+        private boolean failOnNextEvent;
+
+        @StateCreator
+        private MyFailingState(MyInitialEvent event) {
+            myHandledEvents.add(event);
+        }
+
+        @EventSourced
+        private void handle(MyEvent event) {
+            myHandledEvents.add(event);
+        }
+
+        @EventSourced
+        private void handle(MyOtherEvent myOtherEvent) {
+            if (failOnNextEvent) {
+                failOnNextEvent = false;
+                throw new IllegalStateException("failed to source " + myOtherEvent);
+            }
+            myHandledEvents.add(myOtherEvent);
+        }
+
+        @EventSourced
+        private void handle(MyNewEvent myNewEvent) {
+            myHandledEvents.add(myNewEvent);
+        }
+
+    }
+
     private static class MyStateChild extends MyStateParent {
 
         @StateCreator
@@ -1,9 +1,11 @@
 package nl.pancompany.eventstore.test;
 
 import nl.pancompany.eventstore.EventStore;
+import nl.pancompany.eventstore.ReadView;
 import nl.pancompany.eventstore.data.*;
 import nl.pancompany.eventstore.exception.AppendConditionNotSatisfied;
 import nl.pancompany.eventstore.query.Query;
+import nl.pancompany.eventstore.query.QueryItem;
 import nl.pancompany.eventstore.query.Tag;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
@@ -284,6 +286,8 @@ public class EventStoreDcbTest {
         assertThat(queriedEvents.getLast().payload(MyEvent.class).data).isEqualTo("event999");
         // All events filtered have a position >= 400
         assertThat(queriedEvents.stream().map(event -> event.position().value() >= 400).reduce(Boolean::logicalAnd).orElse(false)).isTrue();
+        assertThat(eventStore.read(Query.of("MyEntity1", MyEvent.class), new ReadOptions(SequencePosition.of(400), null)))
+                .isEqualTo(queriedEvents);
     }
 
     @Test
@@ -348,6 +352,199 @@ public class EventStoreDcbTest {
         assertThat(eventStore.read(Query.all())).hasSize(3);
     }
 
-}
+    @Test
+    void readsEventsOfEachQuery_WithCombinedAppendCondition() throws AppendConditionNotSatisfied {
+        Event event1 = new Event(new MyEvent("event1"), "event1"); // 0
+        Event event2 = new Event(new MyOtherEvent("event2"), "event2"); // 1
+        Event event3 = new Event(new MyEvent("event3"), "event1", "event3"); // 2
+        Event event4 = new Event(new MyEvent("event4"), "event4"); // 3
+        eventStore.append(event1, event2, event3, event4);
+
+        ReadResults readResults = eventStore.readAll(List.of(Query.taggedWith("event1").build(),
+                Query.taggedWith("event2").build(), Query.taggedWith("event1").andHavingType(MyOtherEvent.class)));
+
+        assertThat(toEvents(readResults.events(0))).containsExactly(event1, event3);
+        assertThat(toEvents(readResults.events(1))).containsExactly(event2);
+        assertThat(readResults.events(2)).isEmpty();
+        assertThat(readResults.appendCondition().after()).isEqualTo(SequencePosition.of(2));
+        assertThat(eventStore.append(List.of(new Event(new MyEvent("event5"), "event5")), readResults.appendCondition()))
+                .contains(SequencePosition.of(4));
+        eventStore.append(new Event(new MyEvent("event6"), "event2")); // concurrently appended
+        assertThatThrownBy(() -> eventStore.append(List.of(new Event(new MyEvent("event7"), "event7")),
+                readResults.appendCondition())).isInstanceOf(AppendConditionNotSatisfied.class);
+    }
+
+    @Test
+    void readAllRequiresAtLeastOneQuery() {
+        assertThatThrownBy(() -> eventStore.readAll(List.of())).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void readViewKeepsReadingEventsUpToItsPinnedPosition() {
+        Event event1 = new Event(new MyEvent("event1"), "event1"); // 0
+        Event event2 = new Event(new MyEvent("event2"), "event1"); // 1
+        Event event3 = new Event(new MyEvent("event3"), "event1"); // 2
+        eventStore.append(event1, event2);
+
+        ReadView readView = eventStore.readView();
+        eventStore.append(event3);
+
+        assertThat(readView.getLastSequencePosition()).contains(SequencePosition.of(1));
+        assertThat(toEvents(readView.read(Query.taggedWith("event1").build()))).containsExactly(event1, event2);
+        assertThat(toEvents(readView.read(Query.all(), ReadOptions.builder().withStartingPosition(1).build())))
+                .containsExactly(event2);
+        assertThat(readView.read(Query.all(), ReadOptions.builder().withStartingPosition(2).build())).isEmpty();
+        assertThat(toEvents(readView.readAll(List.of(Query.taggedWith("event1").build())).events(0)))
+                .containsExactly(event1, event2);
+        assertThat(toEvents(eventStore.read(Query.taggedWith("event1").build()))).containsExactly(event1, event2, event3);
+    }
+
+    @Test
+    void readViewOfEmptyEventStoreStaysEmpty() {
+        ReadView readView = eventStore.readView();
+        eventStore.append(new Event(new MyEvent("event1"), "event1"));
+
+        assertThat(readView.getLastSequencePosition()).isEmpty();
+        assertThat(readView.read(Query.all())).isEmpty();
+    }
+
+    @Test
+    void queryResultCacheExtendsCachedResultsWithAppendedEvents() {
+        eventStore.enableQueryResultCache(10);
+        Event event1 = new Event(new MyEvent("event1"), "event1");
+        Event event2 = new Event(new MyOtherEvent("event2"), "event1");
+        Event event3 = new Event(new MyEvent("event3"), "event3");
+        Event event4 = new Event(new MyEvent("event4"), "event1");
+        Query query = Query.taggedWith("event1").andHavingType(MyEvent.class);
+        eventStore.append(event1, event2);
+
+        assertThat(toEvents(eventStore.read(query))).containsExactly(event1);
+        assertThat(toEvents(eventStore.read(query))).containsExactly(event1);
+        eventStore.append(event3, event4);
+        assertThat(toEvents(eventStore.read(query))).containsExactly(event1, event4);
+        assertThat(toEvents(eventStore.read(Query.taggedWith("event1").andHavingType(MyEvent.class))))
+                .containsExactly(event1, event4);
+
+        assertThat(eventStore.getQueryResultCacheMetrics()).contains(new QueryResultCacheMetrics(3, 1, 0, 1));
+    }
+
+    @Test
+    void queryResultCacheEvictsLeastRecentlyReadResult() {
+        eventStore.enableQueryResultCache(1);
+        Event event1 = new Event(new MyEvent("event1"), "event1");
+        Event event2 = new Event(new MyEvent("event2"), "event2");
+        eventStore.append(event1, event2);
+
+        assertThat(toEvents(eventStore.read(Query.taggedWith("event1").build()))).containsExactly(event1);
+        assertThat(toEvents(eventStore.read(Query.taggedWith("event2").build()))).containsExactly(event2);
+        assertThat(toEvents(eventStore.read(Query.taggedWith("event1").build()))).containsExactly(event1);
+
+        assertThat(eventStore.getQueryResultCacheMetrics()).contains(new QueryResultCacheMetrics(0, 3, 2, 1));
+    }
+
+    @Test
+    void queryResultCacheIsDisabledByDefault() {
+        assertThat(eventStore.getQueryResultCacheMetrics()).isEmpty();
+        assertThatThrownBy(() -> eventStore.enableQueryResultCache(0)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void countsAndChecksExistenceOfMatchingEvents() {
+        eventStore.append(
+                new Event(new MyEvent("event1"), "event1", "shared"), // 0
+                new Event(new MyOtherEvent("event2"), "event2", "shared"), // 1
+                new Event(new MyEvent("event3"), "event1"), // 2
+                new Event(new MyOtherEvent("event4"), "event4")); // 3
+        Query taggedQuery = Query.taggedWith("event1").andHavingType(MyEvent.class);
+        Query typedQuery = Query.havingType(MyOtherEvent.class).build();
+        Query sharedOrTypedQuery = Query.or(QueryItem.taggedWith("shared").build(), QueryItem.havingType(MyOtherEvent.class).build());
+        ReadOptions fromPosition2 = ReadOptions.builder().withStartingPosition(2).build();
+
+        assertThat(eventStore.count(Query.all())).isEqualTo(4);
+        assertThat(eventStore.count(taggedQuery)).isEqualTo(2);
+        assertThat(eventStore.count(typedQuery)).isEqualTo(2);
+        assertThat(eventStore.count(sharedOrTypedQuery)).isEqualTo(3);
+        assertThat(eventStore.count(sharedOrTypedQuery, fromPosition2)).isEqualTo(1);
+        assertThat(eventStore.count(Query.taggedWith("event1", "event2").build())).isZero();
+        assertThat(eventStore.count(Query.taggedWith("unknown").build())).isZero();
+        assertThat(eventStore.count(Query.all(), ReadOptions.builder().withStartingPosition(1).withStoppingPosition(3).build()))
+                .isEqualTo(2);
+
+        assertThat(eventStore.exists(taggedQuery)).isTrue();
+        assertThat(eventStore.exists(taggedQuery, ReadOptions.builder().withStartingPosition(3).build())).isFalse();
+        assertThat(eventStore.exists(Query.taggedWith("shared").build(), fromPosition2)).isFalse();
+        assertThat(eventStore.exists(typedQuery, fromPosition2)).isTrue();
+        assertThat(eventStore.exists(Query.all(), ReadOptions.builder().withStartingPosition(4).build())).isFalse();
+        for (Query query : List.of(taggedQuery, typedQuery, sharedOrTypedQuery)) {
+            for (int start = 0; start <= 4; start++) {
+                ReadOptions options = ReadOptions.builder().withStartingPosition(start).build();
+                assertThat(eventStore.count(query, options)).isEqualTo(eventStore.read(query, options).size());
+                assertThat(eventStore.exists(query, options)).isEqualTo(!eventStore.read(query, options).isEmpty());
+            }
+        }
+    }
+
+    @Test
+    void readsEventsAppendedWithinTimeRange() {
+        Instant start = Instant.parse("2025-01-01T00:00:00Z");
+        MutableClock clock = new MutableClock(start);
+        try (EventStore eventStore = new EventStore(clock)) {
+            Event event1 = new Event(new MyEvent("event1"), "event1"); // 00:00
+            Event event2 = new Event(new MyOtherEvent("event2"), "event1"); // 01:00
+            Event event3 = new Event(new MyEvent("event3"), "event1"); // 01:00
+            Event event4 = new Event(new MyEvent("event4"), "event1"); // 01:00, clock went back
+            Event event5 = new Event(new MyEvent("event5"), "event1"); // 03:00
+            eventStore.append(event1);
+            clock.time = start.plusSeconds(3600);
+            eventStore.append(event2, event3);
+            clock.time = start.plusSeconds(1800);
+            eventStore.append(event4);
+            clock.time = start.plusSeconds(3 * 3600);
+            eventStore.append(event5);
+            Query query = Query.taggedWith("event1").andHavingType(MyEvent.class);
+
+            assertThat(toEvents(eventStore.read(query, ReadOptions.builder()
+                    .withFrom(start.plusSeconds(3600)).withTo(start.plusSeconds(3 * 3600)).build())))
+                    .containsExactly(event3, event4);
+            assertThat(toEvents(eventStore.read(query, ReadOptions.builder().withFrom(start.plusSeconds(1)).build())))
+                    .containsExactly(event3, event4, event5);
+            assertThat(toEvents(eventStore.read(query, ReadOptions.builder().withTo(start.plusSeconds(3600)).build())))
+                    .containsExactly(event1);
+            assertThat(toEvents(eventStore.read(query, ReadOptions.builder()
+                    .withStartingPosition(3).withFrom(start.plusSeconds(3600)).build())))
+                    .containsExactly(event4, event5);
+            assertThat(eventStore.read(query, ReadOptions.builder().withFrom(start.plusSeconds(4 * 3600)).build())).isEmpty();
+            assertThat(eventStore.read(query, ReadOptions.builder()
+                    .withFrom(start.plusSeconds(3600)).withTo(start.plusSeconds(3600)).build())).isEmpty();
+            assertThat(eventStore.count(query, ReadOptions.builder().withFrom(start.plusSeconds(3600)).build())).isEqualTo(3);
+            assertThat(eventStore.exists(query, ReadOptions.builder().withTo(start).build())).isFalse();
+            assertThat(eventStore.read(Query.all()).get(3).eventStoreMetadata().get("timestamp"))
+                    .isEqualTo("2025-01-01T01:00:00Z");
+        }
+    }
+
+    private static class MutableClock extends Clock {
+
+        private volatile Instant time;
 
+        private MutableClock(Instant time) {
+            this.time = time;
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneId.of("UTC");
+        }
 
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return time;
+        }
+    }
+
+}
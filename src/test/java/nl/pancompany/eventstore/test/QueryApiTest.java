@@ -273,6 +273,39 @@ public class QueryApiTest {
                 new Type(YetAnotherType.class.getCanonicalName(), YetAnotherType.class));
     }
 
+    @Test
+    public void equalQueriesHaveEqualQueryItemsRegardlessOfOrder() {
+        Query query = Query.or(QueryItem.of("myTag", "myType"), QueryItem.of("otherTag", "otherType"));
+        Query sameQuery = Query.either("otherTag", "otherType").or("myTag", "myType").build();
+
+        assertThat(query).isEqualTo(sameQuery);
+        assertThat(query).hasSameHashCodeAs(sameQuery);
+        assertThat(query).isNotEqualTo(Query.of("myTag", "myType"));
+    }
+
+    @Test
+    public void removesSubsumedQueryItems() {
+        QueryItem tagged = QueryItem.taggedWith("myTag").andHavingType("myType", "otherType");
+        QueryItem taggedTwice = QueryItem.taggedWith("myTag", "otherTag").andHavingType("myType");
+        QueryItem otherType = QueryItem.taggedWith("myTag", "otherTag").andHavingType("yetAnotherType");
+
+        assertThat(Query.or(tagged, taggedTwice, otherType).getQueryItems()).containsOnly(tagged, otherType);
+        assertThat(Query.or(tagged, taggedTwice, otherType)).isEqualTo(Query.or(tagged, otherType));
+        assertThat(Query.or(tagged, QueryItem.taggedWith("otherTag").build()).getQueryItems()).hasSize(2);
+        assertThat(Query.or(tagged, QueryItem.taggedWith("myTag").build()).getQueryItems())
+                .containsOnly(QueryItem.taggedWith("myTag").build());
+        assertThat(Query.or(tagged, QueryItem.all())).isEqualTo(Query.all());
+    }
+
+    @Test
+    public void queryItemsAreImmutable() {
+        QueryItem queryItem = QueryItem.taggedWith("myTag").andHavingType("myType");
+
+        assertThatThrownBy(() -> queryItem.tags().add(Tag.of("otherTag"))).isInstanceOf(UnsupportedOperationException.class);
+        assertThatThrownBy(() -> Query.fromItem(queryItem).getQueryItems().add(QueryItem.all()))
+                .isInstanceOf(UnsupportedOperationException.class);
+    }
+
     private static void assertThreeQueryItems(Query query) {
         assertThat(query.getQueryItems()).containsOnly(
                 QueryItem.of(Tag.of("myTag"), Type.of("myType")),